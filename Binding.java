@@ -0,0 +1,64 @@
+package util;
+
+/** What a variable name resolves to: either a local variable (or formal)
+  * in a JVM local slot, or a field of some class.
+  *
+  * Semantic analysis records the binding of each variable reference it
+  * resolves in the ClassInfo of the class (see ClassInfo.setBinding()), so
+  * that code generation can emit loads and stores straight from the
+  * binding instead of resolving the name again.
+  * */
+public class Binding {
+    /** Type of the variable */
+    private Type type;
+    /** Local slot of the variable (-1 for fields) */
+    private int slot;
+    /** Field the name refers to (null for locals) */
+    private FieldTable.Entry field;
+
+    /** Binding constructor for a local variable or formal
+      * @param type type of the variable
+      * @param slot JVM local slot of the variable (this is slot 0)
+      * */
+    public Binding(Type type, int slot) {
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /** Binding constructor for a field
+      * @param field field the name refers to
+      * */
+    public Binding(FieldTable.Entry field) {
+        this.type = field.getType();
+        this.slot = -1;
+        this.field = field;
+    }
+
+    /** Get the type of the variable
+      * @return canonical type
+      * */
+    public Type getType() {
+        return type;
+    }
+
+    /** Is the name bound to a field?
+      * @return true for a field, false for a local variable or formal
+      * */
+    public boolean isField() {
+        return field != null;
+    }
+
+    /** Get the local slot of a local variable or formal
+      * @return slot number, or -1 for a field
+      * */
+    public int getSlot() {
+        return slot;
+    }
+
+    /** Get the field the name refers to
+      * @return field table entry, or null for a local variable or formal
+      * */
+    public FieldTable.Entry getField() {
+        return field;
+    }
+}
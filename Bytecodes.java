@@ -0,0 +1,109 @@
+package codegenjvm;
+
+public class Bytecodes {
+    private static String[] ldcLookup = new String[] {
+        "iconst_m1",
+        "iconst_0",
+        "iconst_1",
+        "iconst_2",
+        "iconst_3",
+        "iconst_4",
+        "iconst_5"
+    };
+    
+    public static void ldc(InstructionList code, int value) {
+        if (value >= -1 && value + 1 < ldcLookup.length) {
+            code.add(ldcLookup[value + 1]);
+        }
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.add("bipush", value);
+        }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.add("sipush", value);
+        }
+        else {
+            code.add("ldc", value);
+        }
+    }
+
+    public static void ldc(InstructionList code, String value) {
+        code.add("ldc", value);
+    }
+
+    private static String[] iloadLookup = new String[] {
+        "iload_0",
+        "iload_1",
+        "iload_2",
+        "iload_3"
+    };
+
+    public static void iload(InstructionList code, int value) {
+        if (value >= 0 && value < iloadLookup.length) {
+            code.add(iloadLookup[value]);
+        }
+        else {
+            code.add("iload", value);
+        }
+    }
+
+    private static String[] istoreLookup = new String[] {
+        "istore_0",
+        "istore_1",
+        "istore_2",
+        "istore_3"
+    };
+
+    public static void istore(InstructionList code, int value) {
+        if (value >= 0 && value < istoreLookup.length) {
+            code.add(istoreLookup[value]);
+        }
+        else {
+            code.add("istore", value);
+        }
+    }
+
+    private static String[] aloadLookup = new String[] {
+        "aconst_null",
+        "aload_0",
+        "aload_1",
+        "aload_2",
+        "aload_3"
+    };
+
+    public static void iinc(InstructionList code, int slot, int delta) {
+        if (delta >= Short.MIN_VALUE && delta <= Short.MAX_VALUE) {
+            code.add("iinc", slot, delta);
+        }
+        else {
+            iload(code, slot);
+            ldc(code, delta);
+            code.add("iadd");
+            istore(code, slot);
+        }
+    }
+
+    public static void aload(InstructionList code, int value) {
+        if (value >= -1 && value + 1 < aloadLookup.length) {
+            code.add(aloadLookup[value + 1]);
+        }
+        else {
+            code.add("aload", value);
+        }
+    }
+
+    private static String[] astoreLookup = new String[] {
+        "astore_0",
+        "astore_1",
+        "astore_2",
+        "astore_3"
+    };
+
+    public static void astore(InstructionList code, int value) {
+        if (value >= 0 && value < astoreLookup.length) {
+            code.add(astoreLookup[value]);
+        }
+        else {
+            code.add("astore", value);
+        }
+    }
+}
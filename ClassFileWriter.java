@@ -0,0 +1,154 @@
+package codegenjvm;
+
+import java.io.*;
+
+/** Builds a binary class file for one Bantam class: the same class the
+  * Jasmin backend describes in text (public, implements Cloneable,
+  * protected fields, public methods that may throw
+  * CloneNotSupportedException).
+  * */
+public class ClassFileWriter {
+    /** Class file version (Java 5, which needs no stack map frames) */
+    private static final int MAJOR_VERSION = 49;
+    private static final int MINOR_VERSION = 0;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SUPER = 0x0020;
+
+    private ConstantPool pool = new ConstantPool();
+    private int thisClass;
+    private int superClass;
+    private int cloneable;
+    private int sourceFile;
+
+    /** Encoded fields and methods */
+    private ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int numFields = 0;
+    private int numMethods = 0;
+
+    /** ClassFileWriter constructor
+      * @param name internal name of the class
+      * @param parent internal name of the superclass
+      * @param filename source file the class came from
+      * */
+    public ClassFileWriter(String name, String parent, String filename) {
+        thisClass = pool.addClass(name);
+        superClass = pool.addClass(parent);
+        cloneable = pool.addClass("java/lang/Cloneable");
+        sourceFile = pool.addUtf8(filename);
+    }
+
+    /** Get the constant pool of the class (used to build method code)
+      * @return constant pool
+      * */
+    public ConstantPool getConstantPool() {
+        return pool;
+    }
+
+    /** Add a protected field
+      * @param name field name
+      * @param descriptor field descriptor
+      * */
+    public void addField(String name, String descriptor) {
+        DataOutputStream out = new DataOutputStream(fields);
+
+        try {
+            out.writeShort(ACC_PROTECTED);
+            out.writeShort(pool.addUtf8(name));
+            out.writeShort(pool.addUtf8(descriptor));
+            out.writeShort(0);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        numFields++;
+    }
+
+    /** Add a public method
+      * @param name method name
+      * @param descriptor method descriptor
+      * @param code bytecode of the method
+      * @param throwsClone true if the method is declared to throw
+      * CloneNotSupportedException
+      * @param isStatic true for a static method
+      * */
+    public void addMethod(String name, String descriptor, CodeBuffer code,
+        boolean throwsClone, boolean isStatic) {
+        DataOutputStream out = new DataOutputStream(methods);
+        byte[] bytecode = code.getCode();
+
+        try {
+            out.writeShort(isStatic ? ACC_PUBLIC | ACC_STATIC : ACC_PUBLIC);
+            out.writeShort(pool.addUtf8(name));
+            out.writeShort(pool.addUtf8(descriptor));
+            out.writeShort(throwsClone ? 2 : 1);
+
+            // Code attribute (no exception table, no nested attributes)
+            out.writeShort(pool.addUtf8("Code"));
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            if (throwsClone) {
+                out.writeShort(pool.addUtf8("Exceptions"));
+                out.writeInt(4);
+                out.writeShort(1);
+                out.writeShort(
+                    pool.addClass("java/lang/CloneNotSupportedException"));
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        numMethods++;
+    }
+
+    /** Get the finished class file
+      * @return class file bytes
+      * */
+    public byte[] toByteArray() {
+        // add the attribute name before the pool is written out
+        int sourceFileAttr = pool.addUtf8("SourceFile");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(MINOR_VERSION);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(pool.getCount());
+            pool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(cloneable);
+
+            out.writeShort(numFields);
+            fields.writeTo(out);
+            out.writeShort(numMethods);
+            methods.writeTo(out);
+
+            out.writeShort(1);
+            out.writeShort(sourceFileAttr);
+            out.writeInt(2);
+            out.writeShort(sourceFile);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,182 @@
+package semant;
+
+import util.ClassTreeNode;
+import java.util.*;
+
+/** Index over the class hierarchy tree, built once after the tree is
+  * checked, that answers subtype and least common ancestor queries in
+  * constant time (instead of walking parent links).
+  *
+  * Subtype queries use pre/post-order numbering: A is a subtype of B
+  * exactly when A's [pre, post] interval lies inside B's.  Least common
+  * ancestor queries use a range minimum query (sparse table) over the
+  * depths along an Euler tour of the tree.
+  * */
+public class ClassHierarchy {
+    /** Maps class names to class ids */
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    /** Class names indexed by class id */
+    private String[] names;
+    /** Pre-order number of each class */
+    private int[] pre;
+    /** Post-order number of each class */
+    private int[] post;
+    /** Depth of each class (Object has depth 0) */
+    private int[] depth;
+    /** Position of the first visit of each class in the Euler tour */
+    private int[] first;
+    /** Class ids in Euler tour order */
+    private int[] euler;
+    /** sparse[k][i] is the position of the shallowest class in
+      * euler[i .. i + 2^k - 1] */
+    private int[][] sparse;
+    /** Names of all the classes (including ones not in the tree) */
+    private Set<String> classNames;
+
+    /** ClassHierarchy constructor
+      * @param root root of the class hierarchy tree
+      * @param numClasses number of classes in the tree
+      * @param classMap maps class names to class tree nodes
+      * */
+    public ClassHierarchy(ClassTreeNode root, int numClasses,
+        Hashtable<String, ClassTreeNode> classMap) {
+        names = new String[numClasses];
+        pre = new int[numClasses];
+        post = new int[numClasses];
+        depth = new int[numClasses];
+        first = new int[numClasses];
+        euler = new int[Math.max(2 * numClasses - 1, 1)];
+        classNames = classMap.keySet();
+
+        numberClasses(root);
+        buildSparseTable();
+    }
+
+    /** Number the classes with an (iterative, so deep hierarchies are fine)
+      * depth first walk, recording the Euler tour along the way
+      * @param root root of the class hierarchy tree
+      * */
+    private void numberClasses(ClassTreeNode root) {
+        Stack<Integer> idStack = new Stack<Integer>();
+        Stack<Iterator<ClassTreeNode>> iterStack =
+            new Stack<Iterator<ClassTreeNode>>();
+        int numIds = 0;
+        int counter = 0;
+        int tourLength = 0;
+
+        ids.put(root.getName(), numIds);
+        names[numIds] = root.getName();
+        pre[numIds] = counter++;
+        depth[numIds] = 0;
+        first[numIds] = tourLength;
+        euler[tourLength++] = numIds;
+        idStack.push(numIds++);
+        iterStack.push(root.getChildrenList());
+
+        while (!iterStack.isEmpty()) {
+            Iterator<ClassTreeNode> iter = iterStack.peek();
+
+            if (iter.hasNext()) {
+                ClassTreeNode child = iter.next();
+                int id = numIds++;
+
+                ids.put(child.getName(), id);
+                names[id] = child.getName();
+                pre[id] = counter++;
+                depth[id] = depth[idStack.peek()] + 1;
+                first[id] = tourLength;
+                euler[tourLength++] = id;
+                idStack.push(id);
+                iterStack.push(child.getChildrenList());
+            }
+            else {
+                iterStack.pop();
+                post[idStack.pop()] = counter++;
+
+                // back in the parent
+                if (!idStack.isEmpty()) {
+                    euler[tourLength++] = idStack.peek();
+                }
+            }
+        }
+    }
+
+    /** Build the sparse table for range minimum queries over the tour
+      * */
+    private void buildSparseTable() {
+        int levels = log2(euler.length) + 1;
+        sparse = new int[levels][];
+        sparse[0] = new int[euler.length];
+
+        for (int i = 0; i < euler.length; i++) {
+            sparse[0][i] = i;
+        }
+
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            sparse[k] = new int[euler.length - (1 << k) + 1];
+
+            for (int i = 0; i < sparse[k].length; i++) {
+                sparse[k][i] = shallower(sparse[k - 1][i],
+                                         sparse[k - 1][i + half]);
+            }
+        }
+    }
+
+    /** Get whichever of two tour positions holds the shallower class
+      * @param a tour position
+      * @param b tour position
+      * @return tour position of the shallower class
+      * */
+    private int shallower(int a, int b) {
+        return depth[euler[a]] <= depth[euler[b]] ? a : b;
+    }
+
+    /** Floor of log base 2
+      * @param n positive integer
+      * @return floor(log2(n))
+      * */
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    /** Is one class a subtype of (or the same as) another?
+      * @param sub name of the possible subclass
+      * @param sup name of the possible superclass
+      * @return true if sub is sup or inherits from it
+      * */
+    public boolean isSubtype(String sub, String sup) {
+        Integer a = ids.get(sub);
+        Integer b = ids.get(sup);
+
+        if (a == null || b == null) {
+            // classes left out of the tree (bad parent) are only
+            // subtypes of themselves
+            return sub != null && sub.equals(sup) && classNames.contains(sub);
+        }
+
+        return pre[b] <= pre[a] && post[a] <= post[b];
+    }
+
+    /** Get the least common ancestor of two classes
+      * @param a class name
+      * @param b class name
+      * @return name of the most specific class that both classes inherit
+      * from, or null if either class is not in the tree
+      * */
+    public String getLeastCommonAncestor(String a, String b) {
+        Integer idA = ids.get(a);
+        Integer idB = ids.get(b);
+
+        if (idA == null || idB == null) {
+            return isSubtype(a, b) ? a : null;
+        }
+
+        int left = Math.min(first[idA], first[idB]);
+        int right = Math.max(first[idA], first[idB]);
+        int k = log2(right - left + 1);
+        int pos = shallower(sparse[k][left], sparse[k][right - (1 << k) + 1]);
+
+        return names[euler[pos]];
+    }
+}
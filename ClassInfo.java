@@ -0,0 +1,104 @@
+package util;
+
+import ast.ASTNode;
+import java.util.*;
+
+/** What semantic analysis works out about one class and hands on to code
+  * generation: the flattened field and method tables of the class, and the
+  * binding of each variable reference in it.
+  *
+  * One analysis builds a ClassInfo for every class in the class tree
+  * before any class is type checked, fills it in, and then only reads it,
+  * so the tables are plain (unsynchronized) and each analysis has its own.
+  * The bindings of a class are only written while that class is type
+  * checked, by the one task checking it.
+  * The AST and class tree node classes belong to the framework and have
+  * no room for the tables, so the analysis publishes its ClassInfo map
+  * under the root of its class tree (see publish()), and the code
+  * generator fetches the map once per compile (see getAll()).
+  * */
+public class ClassInfo {
+    /** ClassInfo maps published so far, keyed by root of the class tree */
+    private static Map<ClassTreeNode, Map<String, ClassInfo>> analyses =
+        Collections.synchronizedMap(
+            new WeakHashMap<ClassTreeNode, Map<String, ClassInfo>>());
+
+    /** Flattened field table of the class */
+    private FieldTable fieldTable;
+    /** Flattened method table of the class */
+    private MethodTable methodTable;
+    /** Bindings of the variable references in the class, by AST node */
+    private IdentityHashMap<ASTNode, Binding> bindings =
+        new IdentityHashMap<ASTNode, Binding>();
+
+    /** Publish the results of an analysis
+      * @param root root of the class tree the analysis built
+      * @param classInfo ClassInfo of every class in the tree, by class name
+      * (must not refer to the class tree nodes)
+      * */
+    public static void publish(ClassTreeNode root,
+        Map<String, ClassInfo> classInfo) {
+        analyses.put(root, classInfo);
+    }
+
+    /** Get the results of the analysis that built a class tree
+      * @param root root of the class tree
+      * @return ClassInfo of every class in the tree, by class name
+      * @throws IllegalStateException if the tree was not built by a
+      * (successful) semantic analysis
+      * */
+    public static Map<String, ClassInfo> getAll(ClassTreeNode root) {
+        Map<String, ClassInfo> classInfo = analyses.get(root);
+        if (classInfo == null) {
+            throw new IllegalStateException(
+                "Class tree was not built by semantic analysis");
+        }
+
+        return classInfo;
+    }
+
+    /** Get the flattened field table of the class
+      * @return field table, or null if building the class environments
+      * stopped before the class
+      * */
+    public FieldTable getFieldTable() {
+        return fieldTable;
+    }
+
+    /** Set the flattened field table of the class
+      * @param fieldTable field table
+      * */
+    public void setFieldTable(FieldTable fieldTable) {
+        this.fieldTable = fieldTable;
+    }
+
+    /** Get the flattened method table of the class
+      * @return method table
+      * */
+    public MethodTable getMethodTable() {
+        return methodTable;
+    }
+
+    /** Set the flattened method table of the class
+      * @param methodTable method table
+      * */
+    public void setMethodTable(MethodTable methodTable) {
+        this.methodTable = methodTable;
+    }
+
+    /** Record the binding of a variable reference in the class
+      * @param node AST node of the reference
+      * @param binding what the reference resolves to
+      * */
+    public void setBinding(ASTNode node, Binding binding) {
+        bindings.put(node, binding);
+    }
+
+    /** Get the binding recorded for a variable reference in the class
+      * @param node AST node of the reference
+      * @return binding, or null if none was recorded
+      * */
+    public Binding getBinding(ASTNode node) {
+        return bindings.get(node);
+    }
+}
@@ -0,0 +1,264 @@
+package codegenjvm;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.*;
+import java.util.zip.ZipException;
+
+/** Writes generated class files (or Jasmin files) to an output directory,
+  * or as entries of a single JAR file, or keeps them in memory.  Code
+  * generators hand each finished file to write().
+  *
+  * In directory mode write() only queues the file; a background thread
+  * writes the queued files, so disk I/O overlaps with generating the next
+  * class.  Each file gets its own FileChannel, and the writer copies each
+  * file through one large direct buffer that it reuses, instead of letting
+  * the channel allocate a temporary one per write.  In JAR mode write()
+  * keeps the file, and close() writes all the entries, sorted by name, into
+  * one channel opened on the JAR file.  The JAR is written in a single
+  * pass with no intermediate files, and its contents do not depend on the
+  * order in which (parallel) code generation finished the classes.  In
+  * memory mode write() just stores the file, for getFiles() to return.
+  *
+  * write() may be called from several threads at once.  The queue is
+  * bounded, so a generator that gets far ahead of the disk waits instead
+  * of piling up finished classes in memory.
+  * */
+public class ClassOutput implements Closeable {
+    /** Size of the direct buffer files are written through */
+    private static final int BUFFER_SIZE = 256 * 1024;
+    /** Number of finished files that may wait to be written */
+    private static final int QUEUE_SIZE = 64;
+
+    /** A file waiting to be written */
+    private static class Entry {
+        /** File name within the directory or JAR */
+        private String name;
+        private byte[] bytes;
+
+        private Entry(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+    }
+
+    /** Queued to tell the writer thread to stop */
+    private static final Entry END = new Entry(null, null);
+
+    /** Output directory (null in JAR and memory mode) */
+    private Path directory;
+    /** JAR being written (JAR mode only) */
+    private JarOutputStream jar;
+    /** Files written so far (JAR and memory mode only), by file name;
+      * sorted in JAR mode */
+    private Map<String, byte[]> files;
+    /** Names of the files queued so far (all modes) */
+    private List<String> names = Collections.synchronizedList(
+        new ArrayList<String>());
+    private BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private Thread writer;
+    /** First error the writer thread ran into (it stops writing then) */
+    private volatile IOException error;
+    /** error has been thrown to a caller of write() already */
+    private volatile boolean errorThrown = false;
+    private boolean closed = false;
+
+    /** ClassOutput constructor; starts the writer thread
+      * @param directory directory to write files to (created if missing)
+      * */
+    public ClassOutput(File directory) throws IOException {
+        this.directory = directory.toPath();
+        Files.createDirectories(this.directory);
+        start();
+    }
+
+    /** ClassOutput constructor for JAR mode
+      * @param jarFile JAR file to write (its directory is created if
+      * missing)
+      * @param mainClass Main-Class of the manifest, or null for none
+      * */
+    public ClassOutput(File jarFile, String mainClass) throws IOException {
+        Path path = jarFile.toPath().toAbsolutePath();
+        Files.createDirectories(path.getParent());
+
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            attributes.put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        jar = new JarOutputStream(new BufferedOutputStream(
+            Channels.newOutputStream(channel), BUFFER_SIZE), manifest);
+        files = Collections.synchronizedMap(new TreeMap<String, byte[]>());
+    }
+
+    /** ClassOutput constructor for memory mode
+      * */
+    public ClassOutput() {
+        files = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    private void start() {
+        writer = new Thread(this::run, "class-output");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queue a file to be written
+      * @param fileName name of the file within the output directory or
+      * JAR, e.g. Main.class
+      * @param bytes contents of the file (must not be changed afterwards)
+      * */
+    public void write(String fileName, byte[] bytes) throws IOException {
+        names.add(fileName);
+        if (files != null) {
+            if (files.put(fileName, bytes) != null && jar != null) {
+                throw new ZipException("duplicate entry: " + fileName);
+            }
+            return;
+        }
+
+        checkError();
+
+        try {
+            queue.put(new Entry(fileName, bytes));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing " +
+                fileName);
+        }
+    }
+
+    /** Write the files still queued and stop the writer thread, or write
+      * the JAR.  An error that write() has thrown already is not thrown
+      * again, so that a caller using try-with-resources does not get the
+      * exception suppressed by itself.
+      * */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (jar != null) {
+            writeJar();
+            return;
+        }
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            queue.put(END);
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing output");
+        }
+
+        if (!errorThrown) {
+            checkError();
+        }
+    }
+
+    /** Get the names of the files written so far
+      * @return file names, in the order they were written
+      * */
+    public List<String> getFileNames() {
+        return names;
+    }
+
+    /** Get the files written so far (memory mode only)
+      * @return file contents by file name, in the order they were written
+      * */
+    public Map<String, byte[]> getFiles() {
+        return files;
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            errorThrown = true;
+            throw error;
+        }
+    }
+
+    /** Write the kept files to the JAR, sorted by name, and finish it (JAR
+      * mode only)
+      * */
+    private void writeJar() throws IOException {
+        try (JarOutputStream out = jar) {
+            synchronized (files) {
+                for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                    out.putNextEntry(new JarEntry(file.getKey()));
+                    out.write(file.getValue());
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+
+    /** Body of the writer thread (directory mode only)
+      * */
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+
+            if (entry == END) {
+                return;
+            }
+            if (error != null) {
+                // keep draining so producers never block on a full queue
+                continue;
+            }
+
+            try {
+                writeFile(directory.resolve(entry.name), entry.bytes, buffer);
+            }
+            catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    /** Write one file through a direct buffer
+      * @param path file to write
+      * @param bytes contents of the file
+      * @param buffer direct buffer to copy the contents through
+      * */
+    private static void writeFile(Path path, byte[] bytes, ByteBuffer buffer)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int pos = 0; pos < bytes.length; ) {
+                int length = Math.min(buffer.capacity(), bytes.length - pos);
+                buffer.clear();
+                buffer.put(bytes, pos, length);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                pos += length;
+            }
+        }
+    }
+}
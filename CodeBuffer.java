@@ -0,0 +1,223 @@
+package codegenjvm;
+
+import java.io.*;
+import java.util.*;
+
+/** Bytecode of one method being assembled into a class file.
+  *
+  * Instructions are encoded straight into bytes as they are added.  Branches
+  * to labels that have not been placed yet are patched once the label is
+  * placed.  The buffer also works out the method's max locals (from the
+  * highest slot used); max stack comes from StackAnalyzer.
+  * */
+public class CodeBuffer {
+    /** Constant pool of the class the method belongs to */
+    private ConstantPool pool;
+    /** Encoded bytecode */
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    /** Positions of the labels placed so far */
+    private HashMap<Label, Integer> labels = new HashMap<>();
+    /** Branches waiting for their labels: {instruction pos, operand pos} */
+    private ArrayList<int[]> fixups = new ArrayList<>();
+    /** Target labels of the branches in fixups */
+    private ArrayList<Label> fixupLabels = new ArrayList<>();
+
+    private int maxStack = 0;
+    private int maxLocals = 0;
+
+    /** CodeBuffer constructor
+      * @param pool constant pool of the class the method belongs to
+      * @param minLocals number of local slots the method needs at least
+      * (this and the formals)
+      * */
+    public CodeBuffer(ConstantPool pool, int minLocals) {
+        this.pool = pool;
+        this.maxLocals = minLocals;
+    }
+
+    /** Add all the instructions and labels of a method (comments are
+      * skipped)
+      * @param code instructions of the method
+      * */
+    public void addAll(InstructionList code) {
+        maxStack = Math.max(maxStack, StackAnalyzer.getMaxStack(code));
+
+        for (int i = 0; i < code.size(); i++) {
+            switch (code.getKind(i)) {
+                case InstructionList.INSTRUCTION:
+                    add(code, i);
+                    break;
+
+                case InstructionList.LABEL:
+                    placeLabel((Label)code.getOperand(i));
+                    break;
+            }
+        }
+    }
+
+    /** Add one instruction
+      * @param code instructions of the method
+      * @param i index of the instruction
+      * */
+    private void add(InstructionList code, int i) {
+        String name = code.getOp(i);
+        Object operand = code.getOperand(i);
+        int opcode = Opcodes.getOpcode(name);
+        int pos = bytes.size();
+
+        switch (Opcodes.getOperandKind(name)) {
+            case Opcodes.NONE:
+                write(opcode);
+                useLocal(name);
+                break;
+
+            case Opcodes.LOCAL:
+                int slot = code.getInt(i);
+                if (slot > 255) {
+                    write(Opcodes.WIDE);
+                    write(opcode);
+                    writeShort(slot);
+                }
+                else {
+                    write(opcode);
+                    write(slot);
+                }
+                maxLocals = Math.max(maxLocals, slot + 1);
+                break;
+
+            case Opcodes.CONSTANT:
+                int index = operand instanceof String
+                    ? pool.addString((String)operand)
+                    : pool.addInteger(code.getInt(i));
+                if (index > 255 || opcode == Opcodes.LDC_W) {
+                    write(Opcodes.LDC_W);
+                    writeShort(index);
+                }
+                else {
+                    write(Opcodes.LDC);
+                    write(index);
+                }
+                break;
+
+            case Opcodes.BYTE:
+                write(opcode);
+                write(code.getInt(i));
+                break;
+
+            case Opcodes.SHORT:
+                write(opcode);
+                writeShort(code.getInt(i));
+                break;
+
+            case Opcodes.INCREMENT:
+                slot = code.getInt(i);
+                int delta = code.getDelta(i);
+                if (slot > 255 || delta < Byte.MIN_VALUE ||
+                    delta > Byte.MAX_VALUE) {
+                    write(Opcodes.WIDE);
+                    write(opcode);
+                    writeShort(slot);
+                    writeShort(delta);
+                }
+                else {
+                    write(opcode);
+                    write(slot);
+                    write(delta);
+                }
+                maxLocals = Math.max(maxLocals, slot + 1);
+                break;
+
+            case Opcodes.BRANCH:
+                write(opcode);
+                fixups.add(new int[] { pos, bytes.size() });
+                fixupLabels.add((Label)operand);
+                writeShort(0);
+                break;
+
+            case Opcodes.FIELD:
+            case Opcodes.METHOD:
+                write(opcode);
+                writeShort(pool.addMember((MemberRef)operand));
+                break;
+
+            case Opcodes.CLASS:
+                write(opcode);
+                writeShort(pool.addClass((String)operand));
+                break;
+
+            case Opcodes.ARRAY_TYPE:
+                write(opcode);
+                write("boolean".equals(operand) ? 4 : 10);
+                break;
+        }
+    }
+
+    /** Place a label at the current position
+      * @param label label name
+      * */
+    private void placeLabel(Label label) {
+        labels.put(label, bytes.size());
+    }
+
+    /** Get the encoded bytecode, with all branches resolved
+      * @return bytecode of the method
+      * */
+    public byte[] getCode() {
+        byte[] code = bytes.toByteArray();
+
+        for (int i = 0; i < fixups.size(); i++) {
+            Integer target = labels.get(fixupLabels.get(i));
+            if (target == null) {
+                throw new RuntimeException("Undefined label: " +
+                    fixupLabels.get(i));
+            }
+
+            int offset = target - fixups.get(i)[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new RuntimeException("Branch offset too large: " +
+                    fixupLabels.get(i));
+            }
+
+            int at = fixups.get(i)[1];
+            code[at] = (byte)(offset >> 8);
+            code[at + 1] = (byte)offset;
+        }
+
+        return code;
+    }
+
+    /** Get the maximum stack depth of the method
+      * @return max stack
+      * */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /** Get the number of local slots the method uses
+      * @return max locals
+      * */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /** Note the slot used by a short-form local instruction (e.g. iload_2)
+      * @param name instruction name
+      * */
+    private void useLocal(String name) {
+        char last = name.charAt(name.length() - 1);
+        if (name.charAt(name.length() - 2) == '_' && last >= '0' && last <= '3'
+            && (name.contains("load") || name.contains("store"))) {
+            maxLocals = Math.max(maxLocals, last - '0' + 1);
+        }
+    }
+
+    private void write(int value) {
+        bytes.write(value);
+    }
+
+    private void writeShort(int value) {
+        bytes.write(value >> 8);
+        bytes.write(value);
+    }
+}
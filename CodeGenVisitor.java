@@ -0,0 +1,1120 @@
+package codegenjvm;
+
+import java.io.*;
+import java.util.*;
+import ast.*;
+import util.ClassTreeNode;
+import util.Binding;
+import util.ClassInfo;
+import util.FieldTable;
+import util.MethodTable;
+import util.SlotAllocator;
+import visitor.Visitor;
+
+public class CodeGenVisitor extends Visitor {
+    private Hashtable<String, ClassTreeNode> classMap;
+    /** What semantic analysis worked out about each class, by class name */
+    private Map<String, ClassInfo> classInfo;
+    /** Where finished classes go */
+    private ClassOutput output;
+    private Class_ curClass;
+    /** ClassInfo of the class being generated (holds its bindings) */
+    private ClassInfo curInfo;
+
+    /** Index in code of the first instruction of the innermost loop */
+    private int loopStart = 0;
+    private SlotAllocator locals = new SlotAllocator();
+    private LabelList labels = new LabelList();
+    /** Instructions of the method being generated (reused for every
+      * method) */
+    private InstructionList code = new InstructionList();
+    /** Field and method refs used by the instructions */
+    private MemberRef.Table refs = new MemberRef.Table();
+
+    private boolean storeIntoVar = false;
+
+    /** Write binary class files instead of Jasmin text */
+    private boolean binary;
+    /** Class file being built (binary mode only) */
+    private ClassFileWriter classFile;
+    /** Jasmin text being built (Jasmin mode only) */
+    private JasminWriter jasmin;
+    /** Peephole optimizer run over each method (null to skip it) */
+    private PeepholeOptimizer optimizer;
+
+    public CodeGenVisitor(Hashtable<String, ClassTreeNode> classMap,
+        Map<String, ClassInfo> classInfo) {
+        this(classMap, classInfo, false);
+    }
+
+    public CodeGenVisitor(Hashtable<String, ClassTreeNode> classMap,
+        Map<String, ClassInfo> classInfo, boolean binary) {
+        this.classMap = classMap;
+        this.classInfo = classInfo;
+        this.binary = binary;
+    }
+
+    public void setOutput(ClassOutput output) {
+        this.output = output;
+    }
+
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /** Pop whatever the code emitted since start left on the stack
+      * @param start index in code where the stack was as it should be
+      * */
+    private void popTo(int start) {
+        for (int n = StackAnalyzer.getNetEffect(code, start); n > 0; n--) {
+            code.add("pop");
+        }
+    }
+
+    /** Get the ref of a field
+      * @param field field table entry
+      * @param name field name
+      * @return interned ref
+      * */
+    private MemberRef fieldRef(FieldTable.Entry field, String name) {
+        return refs.getField(field.getDeclaringClass(), name,
+            field.getDescriptor());
+    }
+
+    /** Get the slot of a local variable (not a field) of a primitive type
+      * @param expr expression
+      * @return slot, or -1 if expr is not such a variable
+      * */
+    private int getLocalSlot(Expr expr) {
+        if (!(expr instanceof VarExpr) || ((VarExpr)expr).getRef() != null) {
+            return -1;
+        }
+
+        Binding binding = curInfo.getBinding(expr);
+        if (binding == null || binding.isField() ||
+            !TypeHelper.isPrimitive(expr.getExprType())) {
+            return -1;
+        }
+
+        return binding.getSlot();
+    }
+
+    /** Match the right side of an assignment to a local against
+      * name + c, c + name and name - c
+      * @param name name of the local assigned to
+      * @param expr right side of the assignment
+      * @return the constant to add to the local, or null if expr does not
+      * match
+      * */
+    private Integer getIncrement(String name, Expr expr) {
+        if (!(expr instanceof BinaryArithPlusExpr ||
+            expr instanceof BinaryArithMinusExpr)) {
+            return null;
+        }
+
+        Expr left = ((BinaryExpr)expr).getLeftExpr();
+        Expr right = ((BinaryExpr)expr).getRightExpr();
+        if (expr instanceof BinaryArithPlusExpr &&
+            left instanceof ConstIntExpr) {
+            Expr swap = left;
+            left = right;
+            right = swap;
+        }
+
+        if (!(right instanceof ConstIntExpr) || getLocalSlot(left) < 0 ||
+            !((VarExpr)left).getName().equals(name)) {
+            return null;
+        }
+
+        int value = Integer.parseInt(((ConstIntExpr)right).getConstant());
+        return expr instanceof BinaryArithMinusExpr ? -value : value;
+    }
+
+    /** Add the JVM entry point to Main: a static main(String[]) that
+      * creates a Main and calls its main()
+      * */
+    private void emitEntryPoint() {
+        locals.reset();
+        labels.clear();
+        code.clear();
+
+        code.add("new", "Main");
+        code.add("dup");
+        code.add("invokespecial", refs.getMethod("Main", "<init>", "()V"));
+        code.add("invokevirtual", refs.getMethod("Main", "main", "()V"));
+        code.add("return");
+        emitMethod("main", "([Ljava/lang/String;)V", true, true);
+    }
+
+    /** Add the method in code to the class being built
+      * @param name method name
+      * @param descriptor method descriptor
+      * @param throwsClone true if the method is declared to throw
+      * CloneNotSupportedException
+      * @param isStatic true for a static method
+      * */
+    private void emitMethod(String name, String descriptor,
+        boolean throwsClone, boolean isStatic) {
+        if (optimizer != null) {
+            optimizer.optimize(code);
+        }
+
+        if (binary) {
+            CodeBuffer buffer = new CodeBuffer(classFile.getConstantPool(),
+                locals.getMaxLocals());
+            buffer.addAll(code);
+            classFile.addMethod(name, descriptor, buffer, throwsClone,
+                isStatic);
+        }
+        else {
+            jasmin.addMethod(name, descriptor, code,
+                StackAnalyzer.getMaxStack(code), locals.getMaxLocals(),
+                throwsClone, isStatic);
+        }
+    }
+
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(Class_ node) {
+        curClass = node;
+        curInfo = classInfo.get(node.getName());
+        
+        String name = TypeHelper.getBase(node.getName());
+        String parent = TypeHelper.getBase(node.getParent());
+        if (binary) {
+            classFile = new ClassFileWriter(name, parent, node.getFilename());
+        }
+        else {
+            jasmin = new JasminWriter(name, parent, node.getFilename());
+        }
+
+        ArrayList<Field> fields = new ArrayList<>();
+        ArrayList<Method> methods = new ArrayList<>();
+        Iterator<ASTNode> iter = node.getMemberList().getIterator();
+        
+        while (iter.hasNext()) {
+            ASTNode member = iter.next();
+            
+            if (member instanceof Field) {
+                fields.add((Field)member);
+            }
+            else if (member instanceof Method) {
+                methods.add((Method)member);
+            }
+        }
+
+        // the constructor runs the field initializers, so the fields are
+        // visited while generating it
+        locals.reset();
+        labels.clear();
+        code.clear();
+
+        Bytecodes.aload(code, 0);
+        code.add("invokespecial", refs.getMethod(parent, "<init>", "()V"));
+
+        for (Field field : fields) {
+            field.accept(this);
+        }
+
+        code.add("return");
+        emitMethod("<init>", "()V", false, false);
+
+        for (Method method : methods) {
+            method.accept(this);
+        }
+
+        if (node.getName().equals("Main")) {
+            emitEntryPoint();
+        }
+
+        try {
+            if (binary) {
+                output.write(node.getName() + ".class",
+                    classFile.toByteArray());
+                classFile = null;
+            }
+            else {
+                output.write(node.getName() + ".j",
+                    (jasmin + System.lineSeparator()).getBytes());
+                jasmin = null;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(Field node) {
+        String type = TypeHelper.getDescriptor(node.getType());
+        if (binary) {
+            classFile.addField(node.getName(), type);
+        }
+        else {
+            jasmin.addField(node.getName(), type);
+        }
+
+        Bytecodes.aload(code, 0);
+
+        if (node.getInit() != null) {
+            node.getInit().accept(this);
+        }
+        else {
+            if (TypeHelper.isPrimitive(node.getType())) {
+                Bytecodes.ldc(code, 0);
+            }
+            else {
+                Bytecodes.aload(code, -1);
+            }
+        }
+        
+        String className = TypeHelper.getBase(curClass.getName());
+        code.add("putfield", refs.getField(className, node.getName(), type));
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(Method node) {
+        locals.reset();
+        labels.clear();
+        code.clear();
+
+        StringBuilder descriptor = new StringBuilder("(");
+        boolean returned = false;
+
+        Iterator<ASTNode> formals = node.getFormalList().getIterator();
+        while (formals.hasNext()) {
+            Formal formal = (Formal)formals.next();
+            formal.accept(this);
+            descriptor.append(TypeHelper.getDescriptor(formal.getType()));
+        }
+
+        descriptor.append(')')
+            .append(TypeHelper.getDescriptor(node.getReturnType()));
+
+        Iterator<ASTNode> stmts = node.getStmtList().getIterator();
+        while (stmts.hasNext()) {
+            ASTNode next = stmts.next();
+            next.accept(this);
+            if (!stmts.hasNext() && next instanceof ReturnStmt) {
+                returned = true;
+            }
+        }
+
+        if (node.getReturnType().equals("void") && !returned) {
+            code.add("return");
+        }
+
+        emitMethod(node.getName(), descriptor.toString(), true, false);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(Formal node) {
+        locals.declare(node.getName());
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(DeclStmt node) {
+        String name = node.getName();
+        locals.declare(name);
+        int index = curInfo.getBinding(node).getSlot();
+
+        code.comment("local var declaration: " + name + " " + index);
+
+        if (node.getInit() != null) {
+            node.getInit().accept(this);
+            
+            if (TypeHelper.isPrimitive(node.getType())) {
+                Bytecodes.istore(code, index);
+            }
+            else {
+                Bytecodes.astore(code, index);
+            }
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ExprStmt node) {
+        int start = code.size();
+        node.getExpr().accept(this);
+        popTo(start);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(IfStmt node) {
+        int start = code.size();
+        Label thenLbl = labels.add();
+        labels.setThen(thenLbl);
+        Label elseLbl = labels.add();
+        labels.setElse(elseLbl);
+        Label exitLbl = labels.add();
+        
+        code.comment("if statement: condition");
+        node.getPredExpr().accept(this);
+
+        code.comment("if statement: then block");
+        code.place(thenLbl);
+        node.getThenStmt().accept(this);
+        popTo(start);
+        code.add("goto", exitLbl);
+
+        code.comment("if statement: else block");
+        code.place(elseLbl);
+        node.getElseStmt().accept(this);
+        popTo(start);
+        code.place(exitLbl);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(WhileStmt node) {
+        int start = code.size();
+        int outerLoopStart = loopStart;
+        loopStart = start;
+        Label condLbl = labels.add();
+        code.place(condLbl);
+        Label thenLbl = labels.add();
+        labels.setThen(thenLbl);
+        Label elseLbl = labels.add();
+        labels.setLoopElse(elseLbl);
+
+        code.comment("while loop condition");
+        node.getPredExpr().accept(this);
+        popTo(start);
+
+        code.comment("while loop body");
+        code.place(thenLbl);
+
+        node.getBodyStmt().accept(this);
+        popTo(start);
+
+        code.comment("bottom of while loop");
+        code.add("goto", condLbl);
+        code.place(elseLbl);
+        loopStart = outerLoopStart;
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ForStmt node) {
+        int start = code.size();
+        int outerLoopStart = loopStart;
+        loopStart = start;
+        if (node.getInitExpr() != null) {
+            code.comment("for loop init");
+            node.getInitExpr().accept(this);
+            popTo(start);
+        }
+
+        Label condLbl = labels.add();
+        code.place(condLbl);
+        Label thenLbl = labels.add();
+        labels.setThen(thenLbl);
+        Label elseLbl = labels.add();
+        labels.setLoopElse(elseLbl);
+
+        if (node.getPredExpr() != null) {
+            code.comment("for loop condition");
+            node.getPredExpr().accept(this);
+        }
+        
+        code.place(thenLbl);
+
+        code.comment("for loop body");
+        node.getBodyStmt().accept(this);
+        if (node.getUpdateExpr() != null) {
+            code.comment("for loop update");
+            node.getUpdateExpr().accept(this);
+        }
+
+        popTo(start);
+
+        code.comment("bottom of for loop");
+        code.add("goto", condLbl);
+        code.place(elseLbl);
+        loopStart = outerLoopStart;
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BlockStmt node) {
+        locals.enterScope();
+        Iterator<ASTNode> iter = node.getStmtList().getIterator();
+        while (iter.hasNext()) {
+            iter.next().accept(this);
+        }
+
+        locals.exitScope();
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BreakStmt node) {
+        popTo(loopStart);
+
+        Label elseLbl = labels.getLoopElse();
+        code.add("goto", elseLbl);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ReturnStmt node) {
+        Expr expr = node.getExpr();
+
+        if (expr != null) {
+            expr.accept(this);
+            String type = expr.getExprType();
+            
+            if (TypeHelper.isPrimitive(type)) {
+                code.add("ireturn");
+            }
+            else if (TypeHelper.isVoid(type)) {
+                code.add("return");
+            }
+            else {
+                code.add("areturn");
+            }
+        }
+        else {
+            code.add("return");
+        }
+        
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(DispatchExpr node) {
+        Expr ref = node.getRefExpr();
+        String source = curClass.getName();
+        boolean isSuper = false;
+
+        if (ref != null) {
+            if (ref instanceof VarExpr) {
+                VarExpr expr = (VarExpr)ref;
+                if (expr.getName().equals("super")) {
+                    code.comment("dispatch: " + curClass.getParent() +
+                        "." + node.getMethodName());
+                }
+                else {
+                    code.comment("dispatch: " + expr.getName() +
+                        "." + node.getMethodName());
+                }
+            }
+
+            ref.accept(this);
+
+            if (ref instanceof VarExpr) {
+                VarExpr expr = (VarExpr)ref;
+
+                if (expr.getName().equals("super")) {
+                    source = curClass.getParent();
+                    isSuper = true;
+                }
+                else if (!expr.getName().equals("this")) {
+                    source = expr.getExprType();
+                }
+            }
+            else {
+                source = ref.getExprType();
+            }
+
+            if (TypeHelper.isArrayBase(ref.getExprType())) {
+                source = "Object";
+            }
+        }
+        else {
+            code.comment("dispatch: " + source +
+                "." + node.getMethodName());
+            Bytecodes.aload(code, 0);
+        }
+
+        Iterator<ASTNode> iter = node.getActualList().getIterator();
+        while (iter.hasNext()) {
+            iter.next().accept(this);
+        }
+
+        MethodTable.Entry entry = classInfo.get(source).getMethodTable()
+            .lookup(node.getMethodName());
+        String invoke = isSuper ? "invokespecial" : "invokevirtual";
+
+        code.add(invoke, refs.getMethod(TypeHelper.getBase(source),
+            node.getMethodName(), entry.getDescriptor()));
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(CastExpr node) {
+        node.getExpr().accept(this);
+        String type = TypeHelper.getBase(node.getType());
+        code.add("checkcast", type);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(InstanceofExpr node) {
+        node.getExpr().accept(this);
+        String type = TypeHelper.getBase(node.getExprType());
+        code.add("instanceof", type);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(NewExpr node) {
+        String type = TypeHelper.getBase(node.getType());
+        code.add("new", type);
+        code.add("dup");
+        code.add("invokespecial", refs.getMethod(type, "<init>", "()V"));
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(NewArrayExpr node) {
+        String type = node.getType();
+        node.getSize().accept(this);
+
+        if (TypeHelper.isPrimitive(type)) {
+            code.add("newarray", type);
+        }
+        else {
+            code.add("anewarray", TypeHelper.getBase(type));
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(AssignExpr node) {
+        String ref = node.getRefName();
+        String name = node.getName();
+        code.comment("var assign: " + name);
+        Binding binding = curInfo.getBinding(node);
+
+        // every form leaves the assigned (new) value on the stack, the
+        // value of the assignment expression; as a statement the value is
+        // popped, and the optimizer drops the dup along with the pop
+        if (binding.isField()) {
+            Bytecodes.aload(code, 0);
+
+            node.getExpr().accept(this);
+            code.add("dup_x1");
+            FieldTable.Entry field = binding.getField();
+            code.add("putfield", fieldRef(field, name));
+        }
+        else {
+            int index = binding.getSlot();
+            Integer delta = getIncrement(name, node.getExpr());
+
+            if (delta != null) {
+                // x = x + c: increment in place
+                Bytecodes.iinc(code, index, delta);
+                Bytecodes.iload(code, index);
+            }
+            else if (TypeHelper.isPrimitive(node.getExprType())) {
+                node.getExpr().accept(this);
+                code.add("dup");
+                Bytecodes.istore(code, index);
+            }
+            else {
+                node.getExpr().accept(this);
+                code.add("dup");
+                Bytecodes.astore(code, index);
+            }
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ArrayAssignExpr node) {
+        String ref = node.getRefName();
+        String name = node.getName();
+        code.comment("array assign: " + name);
+        Binding binding = curInfo.getBinding(node);
+        
+        if (binding.isField()) {
+            Bytecodes.aload(code, 0);
+
+            FieldTable.Entry field = binding.getField();
+            code.add("getfield", fieldRef(field, name));
+        }
+        else {
+            Bytecodes.aload(code, binding.getSlot());
+        }
+            
+        node.getIndex().accept(this);
+        node.getExpr().accept(this);
+
+        String type = TypeHelper.getNonArrayType(node.getExprType());
+        if (TypeHelper.isPrimitive(type)) {
+            code.add("iastore");
+        }
+        else {
+            code.add("aastore");
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(UnaryDecrExpr node) {
+        int slot = getLocalSlot(node.getExpr());
+        if (slot >= 0) {
+            Bytecodes.iinc(code, slot, -1);
+            Bytecodes.iload(code, slot);
+            return null;
+        }
+
+        node.getExpr().accept(this);
+        Bytecodes.ldc(code, -1);
+        code.add("iadd");
+
+        storeIntoVar = true;
+        code.add("dup");
+        node.getExpr().accept(this);
+        storeIntoVar = false;
+        
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(UnaryIncrExpr node) {
+        int slot = getLocalSlot(node.getExpr());
+        if (slot >= 0) {
+            Bytecodes.iinc(code, slot, 1);
+            Bytecodes.iload(code, slot);
+            return null;
+        }
+
+        node.getExpr().accept(this);
+        Bytecodes.ldc(code, 1);
+        code.add("iadd");
+
+        storeIntoVar = true;
+        code.add("dup");
+        node.getExpr().accept(this);
+        storeIntoVar = false;
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(UnaryNegExpr node) {
+        node.getExpr().accept(this);
+        code.add("ineg");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(UnaryNotExpr node) {
+        node.getExpr().accept(this);
+        Bytecodes.ldc(code, 1);
+        code.add("ixor");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryArithDivideExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("idiv");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryArithMinusExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("isub");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryArithModulusExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("irem");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryArithPlusExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("iadd");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryArithTimesExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("imul");
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompEqExpr node) {
+        String left = node.getLeftExpr().getExprType();
+        node.getLeftExpr().accept(this);
+        String right = node.getRightExpr().getExprType();
+        node.getRightExpr().accept(this);
+
+        if (TypeHelper.isPrimitive(left) && TypeHelper.isPrimitive(right)) {
+            code.add("if_icmpne", labels.getElse());
+        }
+        else {
+            code.add("if_acmpne", labels.getElse());
+        }
+        
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompGeqExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("if_icmplt", labels.getElse());
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompGtExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("if_icmple", labels.getElse());
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompLeqExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("if_icmpgt", labels.getElse());
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompLtExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        code.add("if_icmpge", labels.getElse());
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryCompNeExpr node) {
+        String left = node.getLeftExpr().getExprType();
+        node.getLeftExpr().accept(this);
+        String right = node.getRightExpr().getExprType();
+        node.getRightExpr().accept(this);
+
+        if (TypeHelper.isPrimitive(left) && TypeHelper.isPrimitive(right)) {
+            code.add("if_icmpeq", labels.getElse());
+        }
+        else {
+            code.add("if_acmpeq", labels.getElse());
+        }
+        
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryLogicAndExpr node) {
+        node.getLeftExpr().accept(this);
+        node.getRightExpr().accept(this);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(BinaryLogicOrExpr node) {
+        Label oldElse = labels.getElse();
+        Label oldThen = labels.getThen();
+        Label elseLbl = labels.add();
+
+        labels.setElse(elseLbl);
+        node.getLeftExpr().accept(this);
+        code.add("goto", oldThen);
+        
+        code.place(elseLbl);
+        labels.setElse(oldElse);
+        node.getRightExpr().accept(this);
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(VarExpr node) {
+        String fieldOp = storeIntoVar ? "putfield" : "getfield";
+
+        String name = node.getName();
+        if (name.equals("null")) {
+            Bytecodes.aload(code, -1);
+            return null;
+        }
+        else if (name.equals("this") || name.equals("super")) {
+            Bytecodes.aload(code, 0);
+            return null;
+        }
+
+        if (node.getRef() instanceof VarExpr) {
+            VarExpr ref = (VarExpr)node.getRef();
+            ref.accept(this);
+
+            if (ref.getName().equals("super")) {
+                FieldTable.Entry field = curInfo.getBinding(node).getField();
+                code.add(fieldOp, fieldRef(field, name));
+
+                return null;
+            }
+            else if (ref.getName().equals("this")) {
+                FieldTable.Entry field = curInfo.getBinding(node).getField();
+                code.add(fieldOp, fieldRef(field, name));
+
+                return null;
+            }
+            else if (TypeHelper.isArrayBase(ref.getExprType()) &&
+                name.equals("length")) {
+                code.add("arraylength");
+                return null;
+            }
+        }
+        else if (node.getRef() != null && name.equals("length") &&
+            TypeHelper.isArrayBase(node.getRef().getExprType())) {
+            code.add("arraylength");
+            return null;
+        }
+
+        Binding binding = curInfo.getBinding(node);
+        int index = binding.getSlot();
+        
+        if (binding.isField()) {
+            Bytecodes.aload(code, 0);
+            FieldTable.Entry field = binding.getField();
+            code.add(fieldOp, fieldRef(field, name));
+            return null;
+        }
+        else {
+            if (TypeHelper.isPrimitive(node.getExprType())) {
+                if (storeIntoVar) {
+                    Bytecodes.istore(code, index);
+                }
+                else {
+                    Bytecodes.iload(code, index);
+                }
+            }
+            else {
+                Bytecodes.aload(code, index);
+            }
+        }
+        
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ArrayExpr node) {
+        String name = node.getName();
+        String type = TypeHelper.getNonArrayType(node.getExprType());
+
+        if (node.getRef() instanceof VarExpr) {
+            VarExpr ref = (VarExpr)node.getRef();
+
+            if (ref.getName().equals("super")) {
+                ref.accept(this);
+                FieldTable.Entry field = curInfo.getBinding(node).getField();
+                code.add("getfield", fieldRef(field, name));
+            }
+            else if (ref.getName().equals("this")) {
+                ref.accept(this);
+                FieldTable.Entry field = curInfo.getBinding(node).getField();
+                code.add("getfield", fieldRef(field, name));
+
+                return null;
+            }
+            else {
+                // the type checker bound <local>.<name>[...] to the local
+                Bytecodes.aload(code, curInfo.getBinding(node).getSlot());
+            }
+        }
+        else {
+            Binding binding = curInfo.getBinding(node);
+            int index = binding.getSlot();
+            
+            if (binding.isField()) {
+                Bytecodes.aload(code, 0);
+                FieldTable.Entry field = binding.getField();
+                code.add("getfield", fieldRef(field, name));
+            }
+            else {
+                Bytecodes.aload(code, index);
+            }
+        }
+
+        node.getIndex().accept(this);
+        if (TypeHelper.isPrimitive(type)) {
+            if (storeIntoVar) {
+                code.add("iastore");
+            }
+            else {
+                code.add("iaload");
+            }
+        }
+        else {
+            code.add("aaload");
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ConstBooleanExpr node) {
+        if (node.getConstant().equals("true")) {
+            Bytecodes.ldc(code, 1);
+        }
+        else {
+            Bytecodes.ldc(code, 0);
+        }
+
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ConstIntExpr node) {
+        Bytecodes.ldc(code, Integer.valueOf(node.getConstant()));
+        return null;
+    }
+    
+    /** Generate JVM opcodes for AST node
+      * @param node AST node
+      * @return null (returns value to satisfy compiler)
+      * */
+    public Object visit(ConstStringExpr node) {
+        Bytecodes.ldc(code, node.getConstant());
+        return null;
+    }
+}
@@ -0,0 +1,647 @@
+package codegenjvm;
+
+import ast.*;
+import util.ClassTreeNode;
+import visitor.Visitor;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/** Persistent, content-addressed cache of generated classes, shared by
+  * compiler runs.
+  *
+  * The output of a class depends on its source file and on the interfaces
+  * (parent, field and method signatures) of the classes it uses: its
+  * superclass chain, and every class (with its superclass chain) it
+  * refers to, whether by name (field, formal, return and local types, new,
+  * new array, cast, instanceof) or through the type of an object whose
+  * members it reaches.  The key of a class is a hash of the compiler
+  * options, the name and hash of its source file (the name is written into
+  * the class file as its SourceFile attribute), its name, and the
+  * interface hashes of those classes.  Generated class files are stored under their
+  * key in objects/.
+  *
+  * For each source file of a program, a manifest under sources/ (named by
+  * the hash of the file and of the set of files in the program) records
+  * that file set, the classes in the file, their interface hashes, keys
+  * and dependencies.  If every source file of a program has a manifest for
+  * the same file set, the program has a Main class and no class twice,
+  * every dependency is a class of the program, and every recorded key
+  * still matches the current interfaces (which the manifests also supply),
+  * the whole program is a hit and is not even parsed (see
+  * lookupProgram()).  Otherwise the program is parsed and analyzed as
+  * usual, and JVMCodeGenerator only generates the classes whose key is not
+  * in the cache (see lookup()).
+  *
+  * The hash of a source file is that of the bytes the parser read, when the
+  * parser's digests are given (see setSourceDigests()), so the keys match
+  * the program that was parsed even if a file changes afterwards.  Source,
+  * interface hashes and dependencies are worked out once per build.
+  *
+  * The cache is bounded in size: after each build the least recently used
+  * entries are evicted until it fits.  A cache object is meant for one
+  * build at a time, but several compilers may share the directory: entries
+  * are written to a temporary file and moved into place.
+  * */
+public class CompilationCache {
+    private Path objects;
+    private Path sources;
+    /** Maximum size of the cache in bytes */
+    private long maxBytes;
+    /** Compiler options that affect the output */
+    private String options;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /** Digests of the source files, by filename, for the next build */
+    private Map<String, byte[]> sourceDigests = new HashMap<>();
+
+    /** Root of the class tree of the program being built (the fields
+      * below belong to that build, see startBuild()) */
+    private ClassTreeNode buildRoot;
+    /** All classes of the program being built, by name */
+    private HashMap<String, ClassTreeNode> classMap = new HashMap<>();
+    /** Hashes of the source files, by filename */
+    private HashMap<String, String> sourceHashes = new HashMap<>();
+    /** Interface hashes, by class */
+    private HashMap<ClassTreeNode, String> interfaceHashes = new HashMap<>();
+    /** Dependencies, by class (see getDependencies()) */
+    private HashMap<ClassTreeNode, Collection<ClassTreeNode>> dependencies =
+        new HashMap<>();
+
+    /** CompilationCache constructor
+      * @param directory cache directory (created if missing)
+      * @param maxBytes size the cache is kept under
+      * @param options compiler options that affect the generated code
+      * (entries made with other options are never used)
+      * */
+    public CompilationCache(File directory, long maxBytes, String options)
+        throws IOException {
+        this.objects = directory.toPath().resolve("objects");
+        this.sources = directory.toPath().resolve("sources");
+        this.maxBytes = maxBytes;
+        this.options = options;
+
+        Files.createDirectories(objects);
+        Files.createDirectories(sources);
+    }
+
+    /** Give the digests of the source files as the parser read them, for
+      * the next build (see Parser.getSourceDigests()).  A file without one
+      * is read again when its hash is needed.
+      * @param digests SHA-256 of each source file, by filename
+      * */
+    public void setSourceDigests(Map<String, byte[]> digests) {
+        sourceDigests = digests;
+    }
+
+    /** Look up a whole program without parsing it
+      * @param filenames source files of the program
+      * @return class file bytes by class name, or null unless every class
+      * of the program is in the cache and up to date
+      * */
+    public Map<String, byte[]> lookupProgram(String[] filenames)
+        throws IOException {
+        // class name -> {interface hash, key, dependencies...}
+        HashMap<String, String[]> entries = new HashMap<>();
+        HashMap<String, String> sourceHashes = new HashMap<>();
+        HashMap<String, String> sourceFiles = new HashMap<>();
+        ArrayList<Path> manifests = new ArrayList<>();
+
+        TreeSet<String> fileSet = new TreeSet<>(Arrays.asList(filenames));
+        if (fileSet.size() != filenames.length) {
+            // a file given twice declares its classes twice
+            return null;
+        }
+
+        for (String filename : filenames) {
+            String sourceHash = hash(Files.readAllBytes(Paths.get(filename)));
+            Path manifest = sources.resolve(getManifestName(fileSet,
+                sourceHash));
+            if (!Files.exists(manifest)) {
+                return null;
+            }
+            manifests.add(manifest);
+
+            TreeSet<String> recordedFiles = new TreeSet<>();
+            for (String line : Files.readAllLines(manifest,
+                StandardCharsets.UTF_8)) {
+                if (line.startsWith("file ")) {
+                    recordedFiles.add(line.substring("file ".length()));
+                    continue;
+                }
+
+                String[] fields = line.substring("class ".length())
+                    .split(" ");
+                if (entries.put(fields[0], Arrays.copyOfRange(fields, 1,
+                    fields.length)) != null) {
+                    return null;
+                }
+                sourceHashes.put(fields[0], sourceHash);
+                sourceFiles.put(fields[0], filename);
+            }
+
+            if (!recordedFiles.equals(fileSet)) {
+                return null;
+            }
+        }
+
+        if (!entries.containsKey("Main")) {
+            return null;
+        }
+
+        HashMap<String, byte[]> classes = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            String[] fields = entry.getValue();
+
+            TreeMap<String, String> interfaces = new TreeMap<>();
+            for (int i = 2; i < fields.length; i++) {
+                String[] dependency = entries.get(fields[i]);
+                if (dependency == null) {
+                    return null;
+                }
+                interfaces.put(fields[i], dependency[0]);
+            }
+
+            String key = getKey(sourceFiles.get(name),
+                sourceHashes.get(name), name, interfaces);
+            Path object = objects.resolve(key);
+            if (!key.equals(fields[1]) || !Files.exists(object)) {
+                return null;
+            }
+
+            classes.put(name, Files.readAllBytes(object));
+        }
+
+        for (String name : classes.keySet()) {
+            touch(objects.resolve(entries.get(name)[1]));
+        }
+        for (Path manifest : manifests) {
+            touch(manifest);
+        }
+
+        hits += classes.size();
+        return classes;
+    }
+
+    /** Look up the generated class file of an analyzed class
+      * @param node class tree node of the class
+      * @return class file bytes, or null if the class is not in the cache
+      * */
+    public byte[] lookup(ClassTreeNode node) throws IOException {
+        startBuild(node);
+        Path object = objects.resolve(getKey(node));
+        if (!Files.exists(object)) {
+            misses++;
+            return null;
+        }
+
+        touch(object);
+        hits++;
+        return Files.readAllBytes(object);
+    }
+
+    /** Store the generated class file of a class
+      * @param node class tree node of the class
+      * @param bytes class file bytes
+      * */
+    public void store(ClassTreeNode node, byte[] bytes) throws IOException {
+        startBuild(node);
+        write(objects.resolve(getKey(node)), bytes);
+    }
+
+    /** Record the manifests of the source files of the given classes, so a
+      * later build of the same sources can skip parsing (see
+      * lookupProgram())
+      * @param classes all user classes of the program
+      * */
+    public void storeManifests(Collection<ClassTreeNode> classes)
+        throws IOException {
+        TreeSet<String> fileSet = new TreeSet<>();
+        for (ClassTreeNode node : classes) {
+            startBuild(node);
+            fileSet.add(node.getASTNode().getFilename());
+        }
+
+        TreeMap<String, StringBuilder> manifests = new TreeMap<>();
+        for (ClassTreeNode node : classes) {
+            String name = getManifestName(fileSet, getSourceHash(node));
+            StringBuilder manifest = manifests.get(name);
+            if (manifest == null) {
+                manifest = new StringBuilder();
+                for (String filename : fileSet) {
+                    manifest.append("file ").append(filename).append('\n');
+                }
+                manifests.put(name, manifest);
+            }
+
+            manifest.append("class ").append(node.getName()).append(' ')
+                .append(getInterfaceHash(node)).append(' ')
+                .append(getKey(node));
+            for (ClassTreeNode dependency : getDependencies(node)) {
+                manifest.append(' ').append(dependency.getName());
+            }
+            manifest.append('\n');
+        }
+
+        for (Map.Entry<String, StringBuilder> manifest :
+             manifests.entrySet()) {
+            write(sources.resolve(manifest.getKey()),
+                manifest.getValue().toString().getBytes(
+                    StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Evict the least recently used entries until the cache fits in its
+      * size bound
+      * */
+    public void evict() throws IOException {
+        ArrayList<Path> files = new ArrayList<>();
+        HashMap<Path, FileTime> used = new HashMap<>();
+        long size = 0;
+
+        for (Path dir : new Path[] { objects, sources }) {
+            try (DirectoryStream<Path> stream =
+                 Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    files.add(file);
+                    used.put(file, Files.getLastModifiedTime(file));
+                    size += Files.size(file);
+                }
+            }
+        }
+
+        if (size <= maxBytes) {
+            return;
+        }
+
+        files.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+        for (Path file : files) {
+            if (size <= maxBytes) {
+                break;
+            }
+
+            long fileSize = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                size -= fileSize;
+                evictions++;
+            }
+        }
+    }
+
+    /** Get the number of classes found in the cache
+      * @return hit count
+      * */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Get the number of classes not found in the cache
+      * @return miss count
+      * */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Get the number of entries evicted
+      * @return eviction count
+      * */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public String toString() {
+        return "Compilation cache: " + hits + " hits, " + misses +
+            " misses, " + evictions + " evictions";
+    }
+
+    /** Get the key of an analyzed class
+      * @param node class tree node of the class
+      * @return key of the class's generated class file
+      * */
+    private String getKey(ClassTreeNode node) throws IOException {
+        TreeMap<String, String> interfaces = new TreeMap<>();
+        for (ClassTreeNode dependency : getDependencies(node)) {
+            interfaces.put(dependency.getName(),
+                getInterfaceHash(dependency));
+        }
+
+        return getKey(node.getASTNode().getFilename(), getSourceHash(node),
+            node.getName(), interfaces);
+    }
+
+    /** Get the key of a class
+      * @param filename name of the class's source file
+      * @param sourceHash hash of the class's source file
+      * @param name class name
+      * @param interfaces interface hashes of the classes it depends on, by
+      * class name
+      * @return key of the class's generated class file
+      * */
+    private String getKey(String filename, String sourceHash, String name,
+        SortedMap<String, String> interfaces) {
+        StringBuilder key = new StringBuilder();
+        key.append(options).append('\n').append(filename).append('\n')
+            .append(sourceHash).append('\n').append(name).append('\n');
+        for (Map.Entry<String, String> entry : interfaces.entrySet()) {
+            key.append(entry.getKey()).append(' ').append(entry.getValue())
+                .append('\n');
+        }
+
+        return hash(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Get the name of the manifest of a source file
+      * @param fileSet source files of the program
+      * @param sourceHash hash of the source file
+      * @return manifest name (the same file has another manifest in a
+      * program made of other files)
+      * */
+    private static String getManifestName(SortedSet<String> fileSet,
+        String sourceHash) {
+        StringBuilder text = new StringBuilder();
+        for (String filename : fileSet) {
+            text.append(filename).append('\n');
+        }
+        text.append(sourceHash).append('\n');
+
+        return hash(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String getSourceHash(ClassTreeNode node) throws IOException {
+        String filename = node.getASTNode().getFilename();
+        String sourceHash = sourceHashes.get(filename);
+        if (sourceHash == null) {
+            sourceHash = hash(Files.readAllBytes(Paths.get(filename)));
+            sourceHashes.put(filename, sourceHash);
+        }
+
+        return sourceHash;
+    }
+
+    /** Get the hash of the interface of a class: its parent and the
+      * signatures of the fields and methods it declares
+      * @param node class tree node of the class
+      * @return interface hash
+      * */
+    private String getInterfaceHash(ClassTreeNode node) {
+        String interfaceHash = interfaceHashes.get(node);
+        if (interfaceHash == null) {
+            interfaceHash = computeInterfaceHash(node);
+            interfaceHashes.put(node, interfaceHash);
+        }
+
+        return interfaceHash;
+    }
+
+    private static String computeInterfaceHash(ClassTreeNode node) {
+        Class_ ast = node.getASTNode();
+        TreeSet<String> members = new TreeSet<>();
+
+        Iterator<ASTNode> iter = ast.getMemberList().getIterator();
+        while (iter.hasNext()) {
+            ASTNode member = iter.next();
+            if (member instanceof Field) {
+                Field field = (Field)member;
+                members.add("field " + field.getName() + " " +
+                    field.getType());
+            }
+            else if (member instanceof Method) {
+                Method method = (Method)member;
+                StringBuilder signature = new StringBuilder("method ");
+                signature.append(method.getName()).append('(');
+                Iterator<ASTNode> formals =
+                    method.getFormalList().getIterator();
+                while (formals.hasNext()) {
+                    signature.append(((Formal)formals.next()).getType())
+                        .append(',');
+                }
+                signature.append(')').append(method.getReturnType());
+                members.add(signature.toString());
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(ast.getName()).append(" extends ")
+            .append(ast.getParent()).append('\n');
+        for (String member : members) {
+            text.append(member).append('\n');
+        }
+
+        return hash(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Get the user classes whose interfaces the code of a class depends
+      * on (built-in classes never change, so they are left out)
+      * @param node class tree node of the class
+      * @return classes, by name
+      * */
+    private Collection<ClassTreeNode> getDependencies(ClassTreeNode node) {
+        Collection<ClassTreeNode> classes = dependencies.get(node);
+        if (classes != null) {
+            return classes;
+        }
+
+        TreeMap<String, ClassTreeNode> chains = new TreeMap<>();
+        addChain(node.getParent(), chains);
+
+        DependencyCollector collector = new DependencyCollector();
+        node.getASTNode().accept(collector);
+        for (String type : collector.types) {
+            addChain(classMap.get(type), chains);
+        }
+
+        chains.remove(node.getName());
+        classes = chains.values();
+        dependencies.put(node, classes);
+        return classes;
+    }
+
+    /** Add a class and its superclasses (user classes only)
+      * */
+    private static void addChain(ClassTreeNode node,
+        Map<String, ClassTreeNode> classes) {
+        for (; node != null && !node.isBuiltIn(); node = node.getParent()) {
+            classes.put(node.getName(), node);
+        }
+    }
+
+    /** Start a new build if a class belongs to another program than the
+      * last one seen: forget what was worked out for that program, and
+      * take the source digests given for this one
+      * @param node class tree node of some class of the program
+      * */
+    private void startBuild(ClassTreeNode node) {
+        ClassTreeNode root = node;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        if (root == buildRoot) {
+            return;
+        }
+
+        buildRoot = root;
+        classMap.clear();
+        addTree(root);
+        interfaceHashes.clear();
+        dependencies.clear();
+        sourceHashes.clear();
+        for (Map.Entry<String, byte[]> digest : sourceDigests.entrySet()) {
+            sourceHashes.put(digest.getKey(), toHex(digest.getValue()));
+        }
+        sourceDigests = new HashMap<>();
+    }
+
+    /** Add a class and all its descendants to classMap
+      * */
+    private void addTree(ClassTreeNode node) {
+        classMap.put(node.getName(), node);
+
+        Iterator<ClassTreeNode> iter = node.getChildrenList();
+        while (iter.hasNext()) {
+            addTree(iter.next());
+        }
+    }
+
+    /** Collects the types a class refers to: the types it names, and the
+      * static types of the objects whose members it uses and of what those
+      * members give back (the types were recorded by semantic analysis).
+      * Array types are recorded as their element types; primitive types
+      * are recorded too, and simply never resolve to a class.
+      * */
+    private static class DependencyCollector extends Visitor {
+        private TreeSet<String> types = new TreeSet<>();
+
+        private void add(String type) {
+            if (type == null) {
+                return;
+            }
+            while (type.endsWith("[]")) {
+                type = type.substring(0, type.length() - 2);
+            }
+            types.add(type);
+        }
+
+        private void add(Expr expr) {
+            if (expr != null) {
+                add(expr.getExprType());
+            }
+        }
+
+        public Object visit(Field node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(Method node) {
+            add(node.getReturnType());
+            return super.visit(node);
+        }
+
+        public Object visit(Formal node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(DeclStmt node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(NewExpr node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(NewArrayExpr node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(CastExpr node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(InstanceofExpr node) {
+            add(node.getType());
+            return super.visit(node);
+        }
+
+        public Object visit(DispatchExpr node) {
+            add(node.getRefExpr());
+            add(node);
+            return super.visit(node);
+        }
+
+        public Object visit(VarExpr node) {
+            add(node.getRef());
+            add(node);
+            return super.visit(node);
+        }
+
+        public Object visit(ArrayExpr node) {
+            add(node.getRef());
+            add(node);
+            return super.visit(node);
+        }
+    }
+
+    /** Mark an entry as just used (for eviction)
+      * */
+    private static void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file,
+            FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /** Write an entry atomically
+      * */
+    private static void write(Path file, byte[] bytes) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), "tmp", null);
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Hash some bytes
+      * @param bytes bytes to hash
+      * @return SHA-256 of the bytes, in hex
+      * */
+    private static String hash(byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        return toHex(digest.digest(bytes));
+    }
+
+    /** Write a digest in hex
+      * @param digest digest bytes
+      * @return digest in hex
+      * */
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+}
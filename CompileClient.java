@@ -0,0 +1,115 @@
+package server;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/** Thin client of the compile server.  It takes the same command line as
+  * the compiler, has the server compile the program, prints what the
+  * compiler printed and exits with the compiler's status, so it can stand
+  * in for the compiler in scripts and build files.  If no server is
+  * running, it starts one (with the client's own class path) and waits for
+  * it to come up.
+  * */
+public class CompileClient {
+    /** How long to wait for a newly started server (milliseconds) */
+    private static final long START_TIMEOUT = 10000;
+    private static final long RETRY_INTERVAL = 50;
+
+    public static void main(String[] args) throws Exception {
+        Path socket = CompileServer.getDefaultSocket();
+        SocketChannel channel = connect(socket);
+
+        PrintStream request = new PrintStream(
+            Channels.newOutputStream(channel), false, "UTF-8");
+        request.println(CompileServer.DIR + " " +
+            Paths.get("").toAbsolutePath());
+        for (String arg : args) {
+            request.println(CompileServer.ARG + " " + arg);
+        }
+        request.println(CompileServer.END);
+        request.flush();
+
+        BufferedReader response = new BufferedReader(new InputStreamReader(
+            Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        int status = -1;
+        for (String line; status < 0 && (line = response.readLine()) != null; ) {
+            String tag = line.substring(0, 1);
+            String text = line.length() > 2 ? line.substring(2) : "";
+
+            if (tag.equals(CompileServer.OUT)) {
+                System.out.println(text);
+            }
+            else if (tag.equals(CompileServer.ERR)) {
+                System.err.println(text);
+            }
+            else if (tag.equals(CompileServer.EXIT)) {
+                status = Integer.parseInt(text);
+            }
+        }
+
+        channel.close();
+        if (status < 0) {
+            System.err.println("compile server: connection lost");
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /** Connect to the server, starting one if none is running
+      * @param socket socket file of the server
+      * @return open connection
+      * */
+    private static SocketChannel connect(Path socket) throws Exception {
+        try {
+            return open(socket);
+        }
+        catch (IOException e) {
+            startServer(socket);
+        }
+
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (true) {
+            Thread.sleep(RETRY_INTERVAL);
+            try {
+                return open(socket);
+            }
+            catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException(
+                        "compile server did not start on " + socket, e);
+                }
+            }
+        }
+    }
+
+    private static SocketChannel open(Path socket) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return channel;
+    }
+
+    /** Start a server in the background
+      * @param socket socket file for the server to listen on
+      * */
+    private static void startServer(Path socket) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+            "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+            System.getProperty("java.class.path"),
+            CompileServer.class.getName(), socket.toString());
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.start();
+    }
+}
@@ -0,0 +1,408 @@
+package server;
+
+import ast.Program;
+import codegenjvm.CompilationCache;
+import codegenjvm.JVMCodeGenerator;
+import parser.Parser;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+import util.ErrorsFoundException;
+import util.SymbolPool;
+import util.Type;
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/** Long-lived compile server.  It listens on a Unix domain socket and
+  * compiles one program per connection, so the JVM start, class loading
+  * and JIT warm-up of the compiler are paid once instead of per compile.
+  * The compiler's classes, opcode tables and the like stay resident
+  * between compiles.  Each program gets its own class tree (the built-in
+  * classes included), since semantic analysis links the user classes into
+  * it, and the symbol and type pools are cleared after each compile,
+  * keeping only their predefined entries, so the server does not collect
+  * the names of every program it has compiled.  Compilation caches
+  * (-cache) stay open, so their statistics cover every compile the server
+  * has done.
+  *
+  * The protocol is line based (UTF-8).  A request is a "D dir" line with
+  * the client's working directory, one "A arg" line per command line
+  * argument, and a "." line.  The response is any number of "O line" and
+  * "E line" lines (what the compiler printed to stdout and stderr), one
+  * "F path" line per output file, and finally an "X status" line.
+  *
+  * Compiles are served one at a time, because the compiler's output is
+  * captured by redirecting System.out and System.err.  The parser and the
+  * semantic analyzer are told to throw an ErrorsFoundException instead of
+  * ending the JVM when they find errors, so a program with errors gets its
+  * diagnostics and "X 1" and the server goes on serving.  Should the JVM
+  * end during a compile anyway, the response is still finished (the last
+  * partial line included) with "X 1"; the client starts a new server for
+  * the next compile.
+  * */
+public class CompileServer {
+    /** Request tags */
+    static final String DIR = "D";
+    static final String ARG = "A";
+    static final String END = ".";
+    /** Response tags */
+    static final String OUT = "O";
+    static final String ERR = "E";
+    static final String FILE = "F";
+    static final String EXIT = "X";
+
+    private static final String USAGE = "usage: bantamc [-o <dir or jar>] " +
+        "[-jasmin] [-threads <n>] [-parallel] [-noopt] " +
+        "[-cache <dir> [-cachesize <MB>]] [-d] <file>...";
+
+    /** Default size bound of a compilation cache (megabytes) */
+    private static final long DEFAULT_CACHE_SIZE = 64;
+
+    /** Compiler options given on the command line */
+    private static class Options {
+        private ArrayList<String> files = new ArrayList<>();
+        /** Output directory, or JAR if the name ends in .jar */
+        private String output = ".";
+        private boolean jasmin = false;
+        private int threads = 1;
+        private boolean parallel = false;
+        private boolean optimize = true;
+        private boolean debug = false;
+        /** Compilation cache directory (null for no cache) */
+        private String cache = null;
+        private long cacheSize = DEFAULT_CACHE_SIZE;
+    }
+
+    private Path socketPath;
+    /** Response to the request being served (null between requests) */
+    private volatile PrintStream response;
+    /** Compiler stdout and stderr of the request being served */
+    private volatile TaggedStream compilerOut, compilerErr;
+    /** Compilation caches opened so far, by directory and options */
+    private HashMap<String, CompilationCache> caches = new HashMap<>();
+
+    /** CompileServer constructor
+      * @param socketPath socket file to listen on
+      * */
+    public CompileServer(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /** Get the socket the server listens on by default: the bantam.socket
+      * property, or a per-user socket in the temporary directory
+      * @return socket file
+      * */
+    static Path getDefaultSocket() {
+        String socket = System.getProperty("bantam.socket");
+        if (socket != null) {
+            return Paths.get(socket);
+        }
+
+        return Paths.get(System.getProperty("java.io.tmpdir"),
+            "bantamc-" + System.getProperty("user.name") + ".sock");
+    }
+
+    /** Serve compile requests until the JVM ends
+      * */
+    public void serve() throws IOException {
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel server =
+            ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            PrintStream out = response;
+            if (out != null) {
+                compilerOut.finish();
+                compilerErr.finish();
+                out.println(EXIT + " 1");
+            }
+            try {
+                Files.deleteIfExists(socketPath);
+            }
+            catch (IOException e) {
+                // nothing more to do on the way out
+            }
+        }));
+
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        while (true) {
+            try (SocketChannel client = server.accept()) {
+                serve(client, stdout, stderr);
+            }
+            catch (IOException e) {
+                stderr.println("compile server: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Serve one compile request
+      * @param client connection to the client
+      * @param stdout the server's own stdout
+      * @param stderr the server's own stderr
+      * */
+    private void serve(SocketChannel client, PrintStream stdout,
+        PrintStream stderr) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            Channels.newInputStream(client), StandardCharsets.UTF_8));
+        PrintStream out = new PrintStream(Channels.newOutputStream(client),
+            true, "UTF-8");
+
+        Path dir = Paths.get(".");
+        ArrayList<String> args = new ArrayList<>();
+        for (String line; (line = in.readLine()) != null &&
+             !line.equals(END); ) {
+            if (line.startsWith(DIR + " ")) {
+                dir = Paths.get(line.substring(2));
+            }
+            else if (line.startsWith(ARG + " ")) {
+                args.add(line.substring(2));
+            }
+        }
+
+        compilerOut = new TaggedStream(out, OUT);
+        compilerErr = new TaggedStream(out, ERR);
+        int status;
+
+        response = out;
+        System.setOut(new PrintStream(compilerOut, true));
+        System.setErr(new PrintStream(compilerErr, true));
+        try {
+            status = compile(dir, args);
+        }
+        catch (ErrorsFoundException e) {
+            // the errors themselves were reported as they were found
+            System.err.println(e.getMessage());
+            status = 1;
+        }
+        catch (IOException e) {
+            // e.g. an unwritable output or cache directory; the exception
+            // class says more than the message (often just a path)
+            System.err.println(e);
+            status = 1;
+        }
+        catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null
+                ? e.getMessage() : e.toString());
+            status = 1;
+        }
+        finally {
+            System.out.flush();
+            System.err.flush();
+            compilerOut.finish();
+            compilerErr.finish();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            SymbolPool.clear();
+            Type.clear();
+        }
+
+        out.println(EXIT + " " + status);
+        response = null;
+    }
+
+    /** Compile a program the way the command line compiler would
+      * @param dir working directory of the client (relative file names
+      * are relative to it)
+      * @param args command line arguments
+      * @return exit status (0 if the program was compiled)
+      * */
+    private int compile(Path dir, List<String> args) throws IOException {
+        Options options = parseOptions(args);
+        if (options == null) {
+            System.err.println(USAGE);
+            return 1;
+        }
+
+        String[] files = new String[options.files.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = dir.resolve(options.files.get(i)).toString();
+        }
+
+        CompilationCache cache = null;
+        Map<String, byte[]> prebuilt = null;
+        if (options.cache != null) {
+            cache = getCache(dir.resolve(options.cache), options);
+            prebuilt = cache.lookupProgram(files);
+        }
+
+        // if the cache has the whole program, skip the front end
+        ClassTreeNode root = null;
+        if (prebuilt == null) {
+            Parser parser = new Parser(files, options.debug,
+                /*mapped?*/false, /*exitOnErrors?*/false);
+            parser.setRecordDigests(cache != null);
+            Program program = parser.parse();
+            if (cache != null) {
+                cache.setSourceDigests(parser.getSourceDigests());
+            }
+            root = new SemanticAnalyzer(program, options.debug,
+                options.parallel, /*exitOnErrors?*/false).analyze();
+        }
+
+        JVMCodeGenerator generator =
+            new JVMCodeGenerator(root, options.debug, options.jasmin);
+        if (prebuilt != null) {
+            generator.setPrebuilt(prebuilt);
+        }
+        generator.setCache(cache);
+        File output = dir.resolve(options.output).toFile();
+        if (output.getName().endsWith(".jar")) {
+            generator.setJarFile(output);
+        }
+        else {
+            generator.setOutputDirectory(output);
+        }
+        generator.setThreads(options.threads);
+        if (!options.optimize) {
+            generator.setOptimizer(null);
+        }
+
+        generator.generate();
+        for (File file : generator.getOutputFiles()) {
+            response.println(FILE + " " + file.getAbsolutePath());
+        }
+
+        if (prebuilt != null && options.debug) {
+            System.out.println(cache);
+        }
+
+        return 0;
+    }
+
+    /** Get the compilation cache for a directory, opening it if needed
+      * @param directory cache directory
+      * @param options compiler options (those that change the generated
+      * code are part of the cache keys)
+      * @return cache
+      * */
+    private CompilationCache getCache(Path directory, Options options)
+        throws IOException {
+        String codeOptions = "jasmin=" + options.jasmin +
+            " optimize=" + options.optimize;
+        String name = directory.toAbsolutePath().normalize() + " " +
+            codeOptions;
+
+        CompilationCache cache = caches.get(name);
+        if (cache == null) {
+            cache = new CompilationCache(directory.toFile(),
+                options.cacheSize * 1024 * 1024, codeOptions);
+            caches.put(name, cache);
+        }
+
+        return cache;
+    }
+
+    /** Parse the command line
+      * @param args command line arguments
+      * @return options, or null if the command line is not valid
+      * */
+    private static Options parseOptions(List<String> args) {
+        Options options = new Options();
+
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            switch (arg) {
+                case "-o":
+                    if (++i == args.size()) {
+                        return null;
+                    }
+                    options.output = args.get(i);
+                    break;
+
+                case "-threads":
+                    if (++i == args.size()) {
+                        return null;
+                    }
+                    try {
+                        options.threads = Integer.parseInt(args.get(i));
+                    }
+                    catch (NumberFormatException e) {
+                        return null;
+                    }
+                    break;
+
+                case "-cache":
+                    if (++i == args.size()) {
+                        return null;
+                    }
+                    options.cache = args.get(i);
+                    break;
+
+                case "-cachesize":
+                    if (++i == args.size()) {
+                        return null;
+                    }
+                    try {
+                        options.cacheSize = Long.parseLong(args.get(i));
+                    }
+                    catch (NumberFormatException e) {
+                        return null;
+                    }
+                    break;
+
+                case "-jasmin": options.jasmin = true; break;
+                case "-parallel": options.parallel = true; break;
+                case "-noopt": options.optimize = false; break;
+                case "-d": options.debug = true; break;
+
+                default:
+                    if (arg.startsWith("-")) {
+                        return null;
+                    }
+                    options.files.add(arg);
+            }
+        }
+
+        return options.files.isEmpty() ? null : options;
+    }
+
+    /** Output stream that sends what is written to it to the client line
+      * by line, each line prefixed with a tag
+      * */
+    private static class TaggedStream extends OutputStream {
+        private PrintStream out;
+        private String tag;
+        private ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private TaggedStream(PrintStream out, String tag) {
+            this.out = out;
+            this.tag = tag;
+        }
+
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                sendLine();
+            }
+            else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        /** Send what is left of the last line, if anything
+          * */
+        private synchronized void finish() {
+            if (line.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() {
+            out.println(tag + " " +
+                new String(line.toByteArray(), Charset.defaultCharset()));
+            line.reset();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path socket = args.length > 0 ? Paths.get(args[0])
+            : getDefaultSocket();
+        new CompileServer(socket).serve();
+    }
+}
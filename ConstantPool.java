@@ -0,0 +1,194 @@
+package codegenjvm;
+
+import java.io.*;
+import java.util.*;
+
+/** Constant pool of a class file being built.  Each constant is added
+  * once; adding it again returns the index it already has.
+  * */
+public class ConstantPool {
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    /** Serialized entries */
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private DataOutputStream out = new DataOutputStream(bytes);
+    /** Maps constants (tagged with their kind) to their indices */
+    private HashMap<String, Integer> indices = new HashMap<>();
+    /** Indices of Fieldref and Methodref constants (refs are interned, so
+      * they are looked up by identity) */
+    private IdentityHashMap<MemberRef, Integer> members =
+        new IdentityHashMap<>();
+    /** Next free index (index 0 is unused) */
+    private int next = 1;
+
+    /** Add a UTF8 constant
+      * @param value string value
+      * @return constant pool index
+      * */
+    public int addUtf8(String value) {
+        Integer index = indices.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+
+        try {
+            out.writeByte(UTF8);
+            out.writeUTF(value);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return register("U" + value);
+    }
+
+    /** Add an Integer constant
+      * @param value integer value
+      * @return constant pool index
+      * */
+    public int addInteger(int value) {
+        Integer index = indices.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+
+        write(INTEGER);
+        writeInt(value);
+        return register("I" + value);
+    }
+
+    /** Add a Class constant
+      * @param name internal name of the class, e.g. java/lang/Object
+      * @return constant pool index
+      * */
+    public int addClass(String name) {
+        Integer index = indices.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+
+        int nameIndex = addUtf8(name);
+        write(CLASS);
+        writeShort(nameIndex);
+        return register("C" + name);
+    }
+
+    /** Add a String constant
+      * @param value string value
+      * @return constant pool index
+      * */
+    public int addString(String value) {
+        Integer index = indices.get("S" + value);
+        if (index != null) {
+            return index;
+        }
+
+        int valueIndex = addUtf8(value);
+        write(STRING);
+        writeShort(valueIndex);
+        return register("S" + value);
+    }
+
+    /** Add a Fieldref or Methodref constant
+      * @param ref field or method
+      * @return constant pool index
+      * */
+    public int addMember(MemberRef ref) {
+        Integer index = members.get(ref);
+        if (index != null) {
+            return index;
+        }
+
+        int classIndex = addClass(ref.getOwner());
+        int nameAndType = addNameAndType(ref.getName(),
+            ref.getDescriptor());
+        write(ref.isMethod() ? METHODREF : FIELDREF);
+        writeShort(classIndex);
+        writeShort(nameAndType);
+
+        index = nextIndex();
+        members.put(ref, index);
+        return index;
+    }
+
+    /** Add a NameAndType constant
+      * @param name member name
+      * @param descriptor member descriptor
+      * @return constant pool index
+      * */
+    private int addNameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = indices.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        int nameIndex = addUtf8(name);
+        int descriptorIndex = addUtf8(descriptor);
+        write(NAME_AND_TYPE);
+        writeShort(nameIndex);
+        writeShort(descriptorIndex);
+        return register(key);
+    }
+
+    /** Get the constant_pool_count of the class file
+      * @return number of entries plus one
+      * */
+    public int getCount() {
+        return next;
+    }
+
+    /** Write the entries (without the count) to a class file
+      * @param classOut class file output
+      * */
+    public void writeTo(DataOutputStream classOut) throws IOException {
+        bytes.writeTo(classOut);
+    }
+
+    private int register(String key) {
+        int index = nextIndex();
+        indices.put(key, index);
+        return index;
+    }
+
+    private int nextIndex() {
+        if (next > 0xFFFF) {
+            throw new RuntimeException("Too many constants in class");
+        }
+
+        return next++;
+    }
+
+    private void write(int value) {
+        try {
+            out.writeByte(value);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeShort(int value) {
+        try {
+            out.writeShort(value);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeInt(int value) {
+        try {
+            out.writeInt(value);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
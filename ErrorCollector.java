@@ -0,0 +1,84 @@
+package semant;
+
+import util.ErrorHandler;
+import java.util.*;
+
+/** Error handler that collects errors instead of reporting them, so that
+  * errors found by worker threads can be reported later in a fixed order.
+  * Registering is synchronized, so a collector may be shared by several
+  * threads.
+  * */
+public class ErrorCollector extends ErrorHandler {
+    /** A collected error */
+    private static class CollectedError {
+        /** Error type (e.g. SEMANT_ERROR) */
+        private int type;
+        /** Source file (null if not given) */
+        private String filename;
+        /** Source line (only used if filename is given) */
+        private int lineNum;
+        /** Error message */
+        private String message;
+
+        /** CollectedError constructor
+          * @param type error type
+          * @param filename source file (null if not given)
+          * @param lineNum source line
+          * @param message error message
+          * */
+        private CollectedError(int type, String filename, int lineNum,
+            String message) {
+            this.type = type;
+            this.filename = filename;
+            this.lineNum = lineNum;
+            this.message = message;
+        }
+    }
+
+    /** Errors in the order they were registered */
+    private ArrayList<CollectedError> errors = new ArrayList<CollectedError>();
+
+    /** Collect an error
+      * @param type error type
+      * @param message error message
+      * */
+    public synchronized void register(int type, String message) {
+        errors.add(new CollectedError(type, null, 0, message));
+    }
+
+    /** Collect an error
+      * @param type error type
+      * @param filename source file
+      * @param lineNum source line
+      * @param message error message
+      * */
+    public synchronized void register(int type, String filename, int lineNum,
+        String message) {
+        errors.add(new CollectedError(type, filename, lineNum, message));
+    }
+
+    /** Have any errors been collected?
+      * @return true if at least one error was collected
+      * */
+    public synchronized boolean errorsFound() {
+        return !errors.isEmpty();
+    }
+
+    /** Report the collected errors (in the order they were registered)
+      * through another error handler, and forget them
+      * @param errorHandler error handler to report the errors to
+      * */
+    public synchronized void reportTo(ErrorHandler errorHandler) {
+        for (CollectedError error : errors) {
+            if (error.filename == null) {
+                errorHandler.register(error.type, error.message);
+            }
+            else {
+                errorHandler.register(error.type, error.filename,
+                    error.lineNum, error.message);
+            }
+        }
+
+        errors.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package util;
+
+/** Thrown instead of ending the JVM when a compiler phase finds errors and
+  * was told not to exit on errors (e.g. when running inside the compile
+  * server, which must survive a program with errors).  The errors have
+  * been reported through the error handler by then.
+  * */
+public class ErrorsFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /** Number of errors found */
+    private int errorCount;
+
+    /** ErrorsFoundException constructor
+      * @param errorCount number of errors found
+      * */
+    public ErrorsFoundException(int errorCount) {
+        super(errorCount + (errorCount == 1 ? " error" : " errors") +
+            " found");
+        this.errorCount = errorCount;
+    }
+
+    /** Get the number of errors found
+      * @return error count
+      * */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /** Stop if an error handler has errors: end the JVM the way
+      * ErrorHandler.checkErrors() does, or throw an ErrorsFoundException
+      * @param errorHandler error handler to check
+      * @param exit true to end the JVM, false to throw instead
+      * */
+    public static void checkErrors(ErrorHandler errorHandler, boolean exit) {
+        if (exit) {
+            errorHandler.checkErrors();
+        }
+        else if (errorHandler.errorsFound()) {
+            throw new ErrorsFoundException(
+                errorHandler.getErrorList().size());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package util;
+
+import ast.*;
+import java.util.*;
+
+/** Flattened field layout for a class: maps every field visible in the
+  * class (inherited ones included) to its declaring class, its type, and
+  * its JVM descriptor, so a field access can be resolved with a single
+  * lookup no matter how deep the hierarchy is.
+  *
+  * Each analysis builds one table per class (parents first) while the
+  * class environment is being built, when the class scope is the current
+  * scope of each var symbol table, and keeps it in the ClassInfo of the
+  * class, which type checking and code generation then only read.
+  * */
+public class FieldTable {
+    /** Maps field names to table entries */
+    private HashMap<String, Entry> entries;
+
+    /** A field visible in a class */
+    public static class Entry {
+        /** Name of the class that declares the field */
+        private String declaringClass;
+        /** Type of the field */
+        private Type type;
+        /** JVM type descriptor of the field */
+        private String descriptor;
+        /** Binding for references to the field */
+        private Binding binding;
+
+        /** Entry constructor
+          * @param declaringClass name of the class that declares the field
+          * @param type type of the field
+          * */
+        private Entry(String declaringClass, Type type) {
+            this.declaringClass = declaringClass;
+            this.type = type;
+            this.descriptor = type.getDescriptor();
+            this.binding = new Binding(this);
+        }
+
+        /** Get the name of the class that declares the field
+          * @return class name
+          * */
+        public String getDeclaringClass() {
+            return declaringClass;
+        }
+
+        /** Get the type of the field
+          * @return canonical type
+          * */
+        public Type getType() {
+            return type;
+        }
+
+        /** Get the JVM descriptor of the field
+          * @return type descriptor
+          * */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        /** Get the binding for references to the field
+          * @return binding
+          * */
+        public Binding getBinding() {
+            return binding;
+        }
+    }
+
+    /** FieldTable constructor
+      * @param parent table of the parent class (null for Object)
+      * @param node class tree node of the class
+      * */
+    public FieldTable(FieldTable parent, ClassTreeNode node) {
+        if (parent == null) {
+            entries = new HashMap<String, Entry>();
+        }
+        else {
+            entries = new HashMap<String, Entry>(parent.entries);
+        }
+
+        SymbolTable varSymbolTable = node.getVarSymbolTable();
+        Iterator<ASTNode> iter =
+            node.getASTNode().getMemberList().getIterator();
+
+        while (iter.hasNext()) {
+            ASTNode member = iter.next();
+
+            // only fields that made it into the symbol table (i.e. passed
+            // the class environment checks) are visible; the class
+            // environment also enters each field as "this.<name>"
+            if (member instanceof Field) {
+                Field field = (Field)member;
+                Object type = varSymbolTable.peek("this." + field.getName());
+
+                if (type != null && type.equals(field.getType())) {
+                    entries.put(field.getName(),
+                        new Entry(node.getName(), Type.get(field.getType())));
+                }
+            }
+        }
+    }
+
+    /** Look up a field visible in the class
+      * @param name field name
+      * @return table entry, or null if there is no such field
+      * */
+    public Entry lookup(String name) {
+        return entries.get(name);
+    }
+}
@@ -0,0 +1,271 @@
+package util;
+
+import java.util.Arrays;
+
+/** Scoped symbol table with the same interface as SymbolTable, backed by a
+  * single open-addressed hash map plus an undo log instead of a Hashtable
+  * per scope.
+  *
+  * Every name has at most one live binding in the map (the innermost one),
+  * so lookup() is a single probe no matter how deeply scopes are nested.
+  * When add() shadows or introduces a binding it pushes the previous
+  * binding (or its absence) onto the undo log, and exitScope() pops the log
+  * back to where the scope started, restoring the shadowed bindings.
+  * Entering and leaving a scope does not allocate anything.
+  * */
+public class FlatSymbolTable {
+    /** Initial capacity of the map (must be a power of two) */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Names in the map (null for a slot that was never used) */
+    private String[] keys = new String[INITIAL_CAPACITY];
+    /** Hash codes of the names in the map */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    /** Values bound to the names (null if the name is not bound) */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    /** Scope levels of the bindings */
+    private int[] levels = new int[INITIAL_CAPACITY];
+    /** Number of slots that hold a name (bound or not) */
+    private int used = 0;
+
+    /** Names of the bindings replaced by each add() */
+    private String[] undoKeys = new String[INITIAL_CAPACITY];
+    /** Values replaced by each add() (null if the name was not bound) */
+    private Object[] undoValues = new Object[INITIAL_CAPACITY];
+    /** Scope levels of the replaced bindings */
+    private int[] undoLevels = new int[INITIAL_CAPACITY];
+    /** Number of entries in the undo log */
+    private int undoSize = 0;
+
+    /** Size of the undo log when each open scope was entered */
+    private int[] scopeStarts = new int[16];
+    /** Number of open scopes */
+    private int numScopes = 0;
+
+    /** Parent table (consulted when a name is not found here) */
+    private FlatSymbolTable parent = null;
+
+    /** Set the parent table
+      * @param parent parent table
+      * */
+    public void setParent(FlatSymbolTable parent) {
+        this.parent = parent;
+    }
+
+    /** Get the parent table
+      * @return parent table
+      * */
+    public FlatSymbolTable getParent() {
+        return parent;
+    }
+
+    /** Enter a new scope
+      * */
+    public void enterScope() {
+        if (numScopes == scopeStarts.length) {
+            scopeStarts = Arrays.copyOf(scopeStarts, numScopes * 2);
+        }
+
+        scopeStarts[numScopes++] = undoSize;
+    }
+
+    /** Exit the current scope, restoring any bindings it shadowed
+      * */
+    public void exitScope() {
+        if (numScopes == 0) {
+            throw new RuntimeException("Cannot exit scope: no scopes are open");
+        }
+
+        int start = scopeStarts[--numScopes];
+        while (undoSize > start) {
+            undoSize--;
+
+            int slot = find(undoKeys[undoSize], undoKeys[undoSize].hashCode());
+            values[slot] = undoValues[undoSize];
+            levels[slot] = undoLevels[undoSize];
+
+            undoKeys[undoSize] = null;
+            undoValues[undoSize] = null;
+        }
+    }
+
+    /** Add a symbol to the current scope
+      * @param name name of the symbol
+      * @param value value bound to the symbol
+      * */
+    public void add(String name, Object value) {
+        if (numScopes == 0) {
+            throw new RuntimeException("Cannot add symbol: no scopes are open");
+        }
+
+        int hash = name.hashCode();
+        int slot = find(name, hash);
+
+        if (keys[slot] == null) {
+            if (2 * (used + 1) > keys.length) {
+                rehash();
+                slot = find(name, hash);
+            }
+
+            keys[slot] = name;
+            hashes[slot] = hash;
+            used++;
+        }
+
+        // re-adding a name in the same scope just replaces the value (the
+        // undo entry from the first add already restores the outer binding)
+        if (values[slot] == null || levels[slot] != numScopes) {
+            pushUndo(name, values[slot], levels[slot]);
+        }
+
+        values[slot] = value;
+        levels[slot] = numScopes;
+    }
+
+    /** Look up a symbol in all the open scopes (innermost first) and then
+      * in the parent table
+      * @param name name of the symbol
+      * @return value bound to the symbol, or null if it is not found
+      * */
+    public Object lookup(String name) {
+        Object value = values[find(name, name.hashCode())];
+
+        if (value == null && parent != null) {
+            return parent.lookup(name);
+        }
+
+        return value;
+    }
+
+    /** Look up a symbol in the current scope only
+      * @param name name of the symbol
+      * @return value bound to the symbol, or null if it is not found
+      * */
+    public Object peek(String name) {
+        int slot = find(name, name.hashCode());
+
+        if (values[slot] == null || levels[slot] != numScopes) {
+            return null;
+        }
+
+        return values[slot];
+    }
+
+    /** Get the scope level of a symbol
+      * @param name name of the symbol
+      * @return scope level of the innermost binding, or -1 if it is not found
+      * */
+    public int getScopeLevel(String name) {
+        int slot = find(name, name.hashCode());
+
+        if (values[slot] == null) {
+            return parent != null ? parent.getScopeLevel(name) : -1;
+        }
+
+        return levels[slot];
+    }
+
+    /** Get the current scope level
+      * @return number of open scopes
+      * */
+    public int getCurrScopeLevel() {
+        return numScopes;
+    }
+
+    /** Get the number of symbols in the current scope
+      * @return number of symbols
+      * */
+    public int getCurrScopeSize() {
+        return numScopes == 0 ? 0 : undoSize - scopeStarts[numScopes - 1];
+    }
+
+    /** Get the number of symbols in all the open scopes
+      * @return number of symbols
+      * */
+    public int getSize() {
+        return undoSize;
+    }
+
+    /** Find the slot of a name, or the empty slot where it would go
+      * @param name name of the symbol
+      * @param hash hash code of the name
+      * @return slot index
+      * */
+    private int find(String name, int hash) {
+        int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash &&
+                (keys[slot] == name || keys[slot].equals(name))) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /** Record a binding that is about to be replaced
+      * @param name name of the symbol
+      * @param value value being replaced (null if the name is not bound)
+      * @param level scope level of the binding being replaced
+      * */
+    private void pushUndo(String name, Object value, int level) {
+        if (undoSize == undoKeys.length) {
+            undoKeys = Arrays.copyOf(undoKeys, undoSize * 2);
+            undoValues = Arrays.copyOf(undoValues, undoSize * 2);
+            undoLevels = Arrays.copyOf(undoLevels, undoSize * 2);
+        }
+
+        undoKeys[undoSize] = name;
+        undoValues[undoSize] = value;
+        undoLevels[undoSize] = level;
+        undoSize++;
+    }
+
+    /** Grow the map, dropping names that are no longer bound (unless the
+      * undo log still refers to them)
+      * */
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        int[] oldLevels = levels;
+
+        boolean[] logged = new boolean[oldKeys.length];
+        for (int i = 0; i < undoSize; i++) {
+            logged[find(undoKeys[i], undoKeys[i].hashCode())] = true;
+        }
+
+        int live = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null || logged[i]) {
+                live++;
+            }
+        }
+
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 4 * (live + 1)) {
+            capacity *= 2;
+        }
+
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        levels = new int[capacity];
+        used = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null || logged[i]) {
+                int slot = find(oldKeys[i], oldHashes[i]);
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+                levels[slot] = oldLevels[i];
+                used++;
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package codegenjvm;
+
+import java.util.Arrays;
+
+/** Instructions of the method being generated, held as (opcode, operand)
+  * pairs in growable arrays instead of as text.  Labels and comments are
+  * entries too.  Nothing is formatted until a backend reads the list
+  * (CodeBuffer encodes it, JasminWriter prints it), and the arrays are
+  * kept when the list is cleared, so generating a method allocates
+  * next to nothing.
+  *
+  * Int operands (local slots, int constants, and the slot and increment
+  * of an iinc) are kept in int arrays, so they are not boxed.  The other
+  * operands are Strings (string constants and class names), MemberRefs
+  * (fields and methods) or Labels (branch targets).
+  * */
+public class InstructionList {
+    /** Entry kinds */
+    public static final int INSTRUCTION = 0;
+    public static final int LABEL = 1;
+    public static final int COMMENT = 2;
+    /** Kind of an entry removed by remove() (until compact() is called) */
+    public static final int REMOVED = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    /** Opcode names (comment text for comments, null for labels) */
+    private String[] ops = new String[INITIAL_CAPACITY];
+    /** Operands (the label itself for labels) */
+    private Object[] operands = new Object[INITIAL_CAPACITY];
+    /** Int operands (the slot of an iinc) */
+    private int[] ints = new int[INITIAL_CAPACITY];
+    /** Increments of iinc instructions */
+    private int[] deltas = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /** Number of labels placed so far */
+    private int numLabels = 0;
+
+    /** Add an instruction without an operand
+      * @param op opcode name, e.g. iadd
+      * */
+    public void add(String op) {
+        append(INSTRUCTION, op, null);
+    }
+
+    /** Add an instruction with an int operand
+      * @param op opcode name, e.g. iload
+      * @param operand local slot or constant
+      * */
+    public void add(String op, int operand) {
+        append(INSTRUCTION, op, null);
+        ints[size - 1] = operand;
+    }
+
+    /** Add an instruction with a local slot and an increment (iinc)
+      * @param op opcode name
+      * @param slot local slot
+      * @param delta increment
+      * */
+    public void add(String op, int slot, int delta) {
+        append(INSTRUCTION, op, null);
+        ints[size - 1] = slot;
+        deltas[size - 1] = delta;
+    }
+
+    /** Add an instruction with an operand
+      * @param op opcode name, e.g. getfield
+      * @param operand operand (String, MemberRef or Label)
+      * */
+    public void add(String op, Object operand) {
+        append(INSTRUCTION, op, operand);
+    }
+
+    /** Add a comment (only shown in Jasmin output)
+      * @param text comment text
+      * */
+    public void comment(String text) {
+        append(COMMENT, text, null);
+    }
+
+    /** Place a label at the current position (labels are numbered in the
+      * order they are placed)
+      * @param label label to place
+      * */
+    public void place(Label label) {
+        numLabels++;
+        label.place(numLabels);
+        append(LABEL, null, label);
+    }
+
+    /** Get the number of entries
+      * @return number of instructions, labels and comments
+      * */
+    public int size() {
+        return size;
+    }
+
+    /** Get the kind of an entry
+      * @param index entry index
+      * @return INSTRUCTION, LABEL, COMMENT or REMOVED
+      * */
+    public int getKind(int index) {
+        return kinds[index];
+    }
+
+    /** Get the opcode name of an instruction (or the text of a comment)
+      * @param index entry index
+      * @return opcode name
+      * */
+    public String getOp(int index) {
+        return ops[index];
+    }
+
+    /** Get the operand of an instruction (or the label of a label entry)
+      * @param index entry index
+      * @return operand, or null if the instruction has none or an int one
+      * */
+    public Object getOperand(int index) {
+        return operands[index];
+    }
+
+    /** Get the int operand of an instruction (the slot of an iinc)
+      * @param index entry index
+      * @return int operand
+      * */
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    /** Get the increment of an iinc
+      * @param index entry index
+      * @return increment
+      * */
+    public int getDelta(int index) {
+        return deltas[index];
+    }
+
+    /** Replace an instruction
+      * @param index entry index
+      * @param op new opcode name
+      * @param operand new operand, or null
+      * */
+    public void set(int index, String op, Object operand) {
+        kinds[index] = INSTRUCTION;
+        ops[index] = op;
+        operands[index] = operand;
+    }
+
+    /** Replace an instruction with one that has an int operand
+      * @param index entry index
+      * @param op new opcode name
+      * @param operand new int operand
+      * */
+    public void set(int index, String op, int operand) {
+        set(index, op, null);
+        ints[index] = operand;
+    }
+
+    /** Mark an entry as removed.  Indices of the other entries do not
+      * change until compact() is called.
+      * @param index entry index
+      * */
+    public void remove(int index) {
+        kinds[index] = REMOVED;
+        ops[index] = null;
+        operands[index] = null;
+    }
+
+    /** Drop the entries marked as removed
+      * */
+    public void compact() {
+        int to = 0;
+        for (int from = 0; from < size; from++) {
+            if (kinds[from] != REMOVED) {
+                kinds[to] = kinds[from];
+                ops[to] = ops[from];
+                operands[to] = operands[from];
+                ints[to] = ints[from];
+                deltas[to] = deltas[from];
+                to++;
+            }
+        }
+
+        Arrays.fill(ops, to, size, null);
+        Arrays.fill(operands, to, size, null);
+        size = to;
+    }
+
+    /** Remove all entries, keeping the arrays for the next method
+      * */
+    public void clear() {
+        Arrays.fill(ops, 0, size, null);
+        Arrays.fill(operands, 0, size, null);
+        size = 0;
+        numLabels = 0;
+    }
+
+    private void append(int kind, String op, Object operand) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            ops = Arrays.copyOf(ops, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+            ints = Arrays.copyOf(ints, size * 2);
+            deltas = Arrays.copyOf(deltas, size * 2);
+        }
+
+        kinds[size] = kind;
+        ops[size] = op;
+        operands[size] = operand;
+        size++;
+    }
+}
@@ -0,0 +1,379 @@
+package codegenjvm;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.*;
+import util.ClassInfo;
+import util.ClassTreeNode;
+
+public class JVMCodeGenerator {
+    /** Runtime classes the built-in classes map to, bundled into JARs */
+    private static final String[] RUNTIME_CLASSES = { "TextIO", "Sys" };
+
+    private ClassTreeNode classRoot;
+    private boolean debug;
+    /** Write Jasmin .j files instead of .class files */
+    private boolean jasmin;
+    /** Peephole optimizer run over each method (null to skip it) */
+    private PeepholeOptimizer optimizer = new PeepholeOptimizer();
+    /** Number of classes generated at once (1 to generate them in turn) */
+    private int threads = 1;
+    /** Directory the generated files are written to */
+    private File outputDirectory = new File(".");
+    /** JAR to write the generated classes to (null to write files) */
+    private File jarFile;
+    /** Cache of generated classes (null for none) */
+    private CompilationCache cache;
+    /** Classes generated earlier, written as they are, by class name */
+    private Map<String, byte[]> prebuilt = new HashMap<>();
+    /** Files written by the last call to generate() */
+    private ArrayList<File> outputFiles = new ArrayList<>();
+
+    public JVMCodeGenerator(ClassTreeNode classRoot, boolean debug) {
+        this(classRoot, debug, false);
+    }
+
+    /** JVMCodeGenerator constructor
+      * @param classRoot root of the class tree (null if every class is
+      * prebuilt, see setPrebuilt())
+      * @param debug flag indicating whether debugging is enabled
+      * @param jasmin flag indicating whether to write Jasmin files
+      * */
+    public JVMCodeGenerator(ClassTreeNode classRoot, boolean debug,
+        boolean jasmin) {
+        this.classRoot = classRoot;
+        this.debug = debug;
+        this.jasmin = jasmin;
+    }
+
+    /** Set the peephole optimizer, e.g. one with some rules switched off
+      * @param optimizer optimizer to use, or null to skip optimization
+      * */
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /** Set the number of worker threads.  Each worker has its own visitor;
+      * the tables the visitors read (class map, ClassInfo, types) are
+      * read-only by now.
+      * @param threads number of classes to generate at once (1 to generate
+      * them one at a time on the calling thread)
+      * */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Set the directory to write generated files to
+      * @param outputDirectory output directory (created if missing)
+      * */
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /** Write the generated classes, and the runtime classes they use, to
+      * a runnable JAR (with Main as its Main-Class) instead of to files
+      * @param jarFile JAR file to write, or null to write files
+      * */
+    public void setJarFile(File jarFile) {
+        this.jarFile = jarFile;
+    }
+
+    /** Set a cache to take classes from, instead of generating them, and
+      * to store newly generated classes in
+      * @param cache cache to use, or null for none
+      * */
+    public void setCache(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /** Set classes that were generated earlier (e.g. found by
+      * CompilationCache.lookupProgram()); they are written as they are and
+      * not generated again
+      * @param prebuilt class file (or Jasmin file) bytes, by class name
+      * */
+    public void setPrebuilt(Map<String, byte[]> prebuilt) {
+        this.prebuilt = prebuilt;
+    }
+
+    public void generate() throws IOException {
+        if (jarFile != null && jasmin) {
+            throw new IllegalStateException(
+                "Jasmin output cannot be written to a JAR");
+        }
+
+        // if generating fails and closing the output fails too, the close
+        // failure is added to the generation failure as a suppressed
+        // exception instead of replacing it
+        List<String> fileNames;
+        try (ClassOutput output = jarFile != null
+            ? new ClassOutput(jarFile, "Main")
+            : new ClassOutput(outputDirectory)) {
+            if (jarFile != null) {
+                for (String name : RUNTIME_CLASSES) {
+                    output.write(name + ".class", readRuntimeClass(name));
+                }
+            }
+
+            generateAll(output);
+            fileNames = output.getFileNames();
+        }
+
+        outputFiles.clear();
+        if (jarFile != null) {
+            outputFiles.add(jarFile);
+        }
+        else {
+            for (String name : fileNames) {
+                outputFiles.add(new File(outputDirectory, name));
+            }
+        }
+    }
+
+    /** Get the files written by the last call to generate()
+      * @return the JAR, or the class (or Jasmin) files
+      * */
+    public List<File> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /** Generate the classes in memory instead of writing them out
+      * @return class file bytes, by class name
+      * */
+    public Map<String, byte[]> generateClasses() throws IOException {
+        if (jasmin) {
+            throw new IllegalStateException(
+                "Jasmin output cannot be generated in memory");
+        }
+
+        ClassOutput output = new ClassOutput();
+        generateAll(output);
+
+        Map<String, byte[]> classes = new HashMap<>();
+        for (Map.Entry<String, byte[]> file : output.getFiles().entrySet()) {
+            String name = file.getKey();
+            classes.put(name.substring(0, name.length() - ".class".length()),
+                file.getValue());
+        }
+
+        return classes;
+    }
+
+    /** Generate the classes in memory, load them with a MemoryClassLoader
+      * and run the program (Main's main()) in this JVM.  Nothing is written
+      * to disk.  The runtime classes come from the class path of the
+      * compiler.
+      * @throws Exception any exception the program throws
+      * */
+    public void run() throws Exception {
+        ClassLoader loader = new MemoryClassLoader(generateClasses(),
+            JVMCodeGenerator.class.getClassLoader());
+
+        try {
+            loader.loadClass("Main").getMethod("main", String[].class)
+                .invoke(null, (Object)new String[0]);
+        }
+        catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Generate all user classes
+      * @param output where the finished classes go (not closed here)
+      * */
+    private void generateAll(ClassOutput output) throws IOException {
+        String extension = jasmin ? ".j" : ".class";
+        for (Map.Entry<String, byte[]> entry : prebuilt.entrySet()) {
+            output.write(entry.getKey() + extension, entry.getValue());
+        }
+        if (classRoot == null) {
+            if (cache != null) {
+                cache.evict();
+            }
+            return;
+        }
+
+        Hashtable<String, ClassTreeNode> classMap = new Hashtable<>();
+        ArrayList<ClassTreeNode> toTraverse = new ArrayList<>();
+        toTraverse.add(classRoot);
+        
+        while (toTraverse.size() > 0) {
+            ArrayList<ClassTreeNode> temp = new ArrayList<>();
+
+            for (ClassTreeNode node : toTraverse) {
+                classMap.put(node.getName(), node);
+
+                Iterator<ClassTreeNode> iter = node.getChildrenList();
+                while (iter.hasNext()) {
+                    temp.add(iter.next());
+                }
+            }
+
+            toTraverse = temp;
+        }
+
+        Map<String, ClassInfo> classInfo = ClassInfo.getAll(classRoot);
+
+        ArrayList<ClassTreeNode> userClasses = new ArrayList<>();
+        for (ClassTreeNode node : classMap.values()) {
+            if (!node.isBuiltIn() && !prebuilt.containsKey(node.getName())) {
+                userClasses.add(node);
+            }
+        }
+
+        // with a cache, only the classes not found in it are generated,
+        // into memory first so they can be stored in the cache
+        ArrayList<ClassTreeNode> toGenerate = userClasses;
+        ClassOutput generated = output;
+        if (cache != null) {
+            toGenerate = new ArrayList<>();
+            for (ClassTreeNode node : userClasses) {
+                byte[] bytes = cache.lookup(node);
+                if (bytes != null) {
+                    output.write(node.getName() + extension, bytes);
+                }
+                else {
+                    toGenerate.add(node);
+                }
+            }
+            generated = new ClassOutput();
+        }
+
+        if (threads == 1 || toGenerate.size() < 2) {
+            CodeGenVisitor visitor =
+                newVisitor(classMap, classInfo, generated);
+            for (ClassTreeNode node : toGenerate) {
+                generate(visitor, node);
+            }
+        }
+        else {
+            generateParallel(classMap, classInfo, toGenerate, generated);
+        }
+
+        if (cache != null) {
+            for (ClassTreeNode node : toGenerate) {
+                String name = node.getName() + extension;
+                byte[] bytes = generated.getFiles().get(name);
+                cache.store(node, bytes);
+                output.write(name, bytes);
+            }
+            cache.storeManifests(userClasses);
+            cache.evict();
+        }
+
+        if (debug && optimizer != null) {
+            System.out.println(optimizer);
+        }
+        if (debug && cache != null) {
+            System.out.println(cache);
+        }
+    }
+
+    /** Generate the classes on a pool of worker threads, one visitor per
+      * worker
+      * @param classMap all classes, by name
+      * @param classInfo ClassInfo of all classes, by name
+      * @param userClasses classes to generate
+      * @param output where the finished classes go
+      * */
+    private void generateParallel(Hashtable<String, ClassTreeNode> classMap,
+        Map<String, ClassInfo> classInfo,
+        ArrayList<ClassTreeNode> userClasses, ClassOutput output)
+        throws IOException {
+        ThreadLocal<CodeGenVisitor> visitors = ThreadLocal.withInitial(
+            () -> newVisitor(classMap, classInfo, output));
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(threads, userClasses.size()));
+
+        try {
+            ArrayList<Future<?>> results = new ArrayList<>();
+            for (ClassTreeNode node : userClasses) {
+                results.add(pool.submit(() -> {
+                    generate(visitors.get(), node);
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Code generation interrupted", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Read the class file of a runtime class from the class path
+      * @param name class name
+      * @return class file bytes
+      * */
+    private static byte[] readRuntimeClass(String name) throws IOException {
+        ClassLoader loader = JVMCodeGenerator.class.getClassLoader();
+        InputStream in = loader.getResourceAsStream(name + ".class");
+        if (in == null) {
+            throw new FileNotFoundException("Runtime class " + name +
+                " not found on the class path");
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                bytes.write(buffer, 0, n);
+            }
+
+            return bytes.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private CodeGenVisitor newVisitor(
+        Hashtable<String, ClassTreeNode> classMap,
+        Map<String, ClassInfo> classInfo, ClassOutput output) {
+        CodeGenVisitor visitor =
+            new CodeGenVisitor(classMap, classInfo, !jasmin);
+        visitor.setOptimizer(optimizer);
+        visitor.setOutput(output);
+        return visitor;
+    }
+
+    /** Generate one class and queue it to be written
+      * @param visitor visitor to generate with (not in use elsewhere)
+      * @param node class tree node of the class
+      * */
+    private void generate(CodeGenVisitor visitor, ClassTreeNode node)
+        throws IOException {
+        try {
+            node.getASTNode().accept(visitor);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package codegenjvm;
+
+/** Builds the Jasmin text of one class (the debug alternative to
+  * ClassFileWriter).  The text of the whole class is built in a single
+  * buffer and only turned into a String once, at the end.
+  * */
+public class JasminWriter {
+    private static final String INDENT = "    ";
+
+    private StringBuilder out = new StringBuilder(4096);
+    private String sep = System.lineSeparator();
+
+    /** JasminWriter constructor
+      * @param name internal name of the class
+      * @param parent internal name of the superclass
+      * @param filename source file the class came from
+      * */
+    public JasminWriter(String name, String parent, String filename) {
+        out.append(".source ").append(filename).append(sep);
+        out.append(".class public ").append(name).append(sep);
+        out.append(".super ").append(parent).append(sep);
+        out.append(".implements java/lang/Cloneable").append(sep);
+        out.append(sep);
+    }
+
+    /** Add a protected field
+      * @param name field name
+      * @param descriptor field descriptor
+      * */
+    public void addField(String name, String descriptor) {
+        out.append(".field protected ").append(name).append(' ')
+            .append(descriptor).append(sep);
+    }
+
+    /** Add a public method
+      * @param name method name
+      * @param descriptor method descriptor
+      * @param code instructions of the method
+      * @param maxStack max stack of the method
+      * @param maxLocals max locals of the method
+      * @param throwsClone true if the method is declared to throw
+      * CloneNotSupportedException
+      * @param isStatic true for a static method
+      * */
+    public void addMethod(String name, String descriptor, InstructionList code,
+        int maxStack, int maxLocals, boolean throwsClone, boolean isStatic) {
+        out.append(sep);
+        out.append(isStatic ? ".method public static " : ".method public ")
+            .append(name).append(descriptor).append(sep);
+        if (throwsClone) {
+            out.append(".throws java/lang/CloneNotSupportedException")
+                .append(sep);
+        }
+        out.append(INDENT).append(INDENT).append(".limit stack ")
+            .append(maxStack).append(sep);
+        out.append(INDENT).append(INDENT).append(".limit locals ")
+            .append(maxLocals).append(sep);
+
+        for (int i = 0; i < code.size(); i++) {
+            switch (code.getKind(i)) {
+                case InstructionList.LABEL:
+                    out.append(code.getOperand(i)).append(':');
+                    break;
+
+                case InstructionList.COMMENT:
+                    out.append(INDENT).append("; ").append(code.getOp(i));
+                    break;
+
+                default:
+                    appendInstruction(code, i);
+            }
+
+            out.append(sep);
+        }
+
+        out.append(".end method").append(sep);
+    }
+
+    /** Append an instruction and its operand
+      * @param code instructions of the method
+      * @param i index of the instruction
+      * */
+    private void appendInstruction(InstructionList code, int i) {
+        String op = code.getOp(i);
+        Object operand = code.getOperand(i);
+        out.append(INDENT).append(op);
+
+        switch (Opcodes.getOperandKind(op)) {
+            case Opcodes.NONE:
+                break;
+
+            case Opcodes.LOCAL:
+            case Opcodes.BYTE:
+            case Opcodes.SHORT:
+                out.append(' ').append(code.getInt(i));
+                break;
+
+            case Opcodes.INCREMENT:
+                out.append(' ').append(code.getInt(i)).append(' ')
+                    .append(code.getDelta(i));
+                break;
+
+            case Opcodes.CONSTANT:
+                out.append(' ');
+                if (operand instanceof String) {
+                    appendString((String)operand);
+                }
+                else {
+                    out.append(code.getInt(i));
+                }
+                break;
+
+            case Opcodes.FIELD:
+            case Opcodes.METHOD:
+                MemberRef ref = (MemberRef)operand;
+                out.append(' ').append(ref.getOwner()).append('/')
+                    .append(ref.getName());
+                if (!ref.isMethod()) {
+                    out.append(' ');
+                }
+                out.append(ref.getDescriptor());
+                break;
+
+            default:
+                out.append(' ').append(operand);
+        }
+    }
+
+    /** Append a string constant, quoted and escaped
+      * @param value string value
+      * */
+    private void appendString(String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n') {
+                out.append("\\n");
+            }
+            else if (c == '"') {
+                out.append("\\\"");
+            }
+            else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    public String toString() {
+        return out.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package codegenjvm;
+
+/** A branch target in the method being generated.  A label is numbered
+  * when it is placed, so labels come out as L1, L2, ... in the order they
+  * appear in the code, and instructions can refer to a label before it is
+  * placed.
+  * */
+public class Label {
+    /** Position of the label in placement order (0 until placed) */
+    private int number = 0;
+
+    /** Place the label
+      * @param number position of the label in placement order
+      * */
+    public void place(int number) {
+        this.number = number;
+    }
+
+    /** Has the label been placed?
+      * @return true if the label has been placed
+      * */
+    public boolean isPlaced() {
+        return number > 0;
+    }
+
+    public String toString() {
+        return isPlaced() ? "L" + number : "L%";
+    }
+}
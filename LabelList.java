@@ -0,0 +1,47 @@
+package codegenjvm;
+
+/** Creates labels and tracks the labels a condition branches to (labels
+  * are placed and numbered by InstructionList.place())
+  * */
+public class LabelList {
+    private Label thenLbl;
+    private Label elseLbl;
+    private Label elseLoopLbl;
+
+    public Label add() {
+        return new Label();
+    }
+
+    public void setThen(Label label) {
+        thenLbl = label;
+    }
+
+    public Label getThen() {
+        return thenLbl;
+    }
+
+    public void setElse(Label label) {
+        elseLbl = label;
+    }
+
+    public Label getElse() {
+        return elseLbl;
+    }
+
+    public void setLoopElse(Label label) {
+        setElse(label);
+        elseLoopLbl = label;
+    }
+
+    public Label getLoopElse() {
+        return elseLoopLbl;
+    }
+
+    /** Forget the branch targets of the previous method
+      * */
+    public void clear() {
+        thenLbl = null;
+        elseLbl = null;
+        elseLoopLbl = null;
+    }
+}
@@ -0,0 +1,390 @@
+package parser;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/** Character stream for the parser that reads a source file through a
+  * memory-mapped buffer instead of an InputStreamReader.
+  *
+  * The whole file is decoded into a char array in a single pass when the
+  * stream is (re)initialized.  Plain ASCII bytes are copied straight across;
+  * UTF-8 sequences and Java unicode escapes (backslash-u) are only decoded
+  * when they are actually seen.  After that readChar() and backup() are just
+  * index updates, and line/column numbers are computed on demand from the
+  * recorded line starts instead of being tracked for every character.
+  * Both lookups carry on from the last position looked up, so reading the
+  * positions of the tokens front to back costs time linear in the file.
+  *
+  * It extends JavaCharStream so that the generated token manager (which is
+  * typed against JavaCharStream) can use it without any changes.
+  * */
+public class MappedCharStream extends JavaCharStream {
+    /** Tab stops used for column numbers (same as JavaCharStream) */
+    private static final int TAB_SIZE = 8;
+
+    /** Decoded characters of the current file */
+    private char[] chars = new char[0];
+    /** Number of decoded characters */
+    private int length = 0;
+    /** Index of the next character to read */
+    private int pos = 0;
+    /** Index of the first character of the current token */
+    private int tokenBegin = 0;
+
+    /** Indices of the first character of each line */
+    private int[] lineStarts = new int[64];
+    /** Number of lines */
+    private int numLines = 0;
+    /** Line (index into lineStarts) of the last position looked up */
+    private int lastLine = 0;
+    /** Index of the last character whose column was computed (-1 for
+      * none) */
+    private int lastColumnIndex = -1;
+    /** Column of that character, not counting unicode escapes */
+    private int lastColumn = 0;
+    /** Extra columns of the unicode escapes on its line before it */
+    private int lastEscapeWidth = 0;
+    /** First escape (index into escapes) not counted in lastEscapeWidth */
+    private int nextEscape = 0;
+
+    /** Indices of characters that came from unicode escapes (usually none) */
+    private int[] escapes = new int[0];
+    /** Extra source columns taken up by each unicode escape */
+    private int[] escapeWidths = new int[0];
+    /** Number of unicode escapes */
+    private int numEscapes = 0;
+
+    /** Channel of the current file (null once closed) */
+    private FileChannel channel;
+    /** Is the SHA-256 digest of each file computed? */
+    private boolean recordDigest;
+    /** SHA-256 of the bytes of the current file (null if not recorded) */
+    private byte[] digest;
+
+    /** MappedCharStream constructor
+      * @param fileReader open input stream of the source file (closed by
+      * the stream, see close())
+      * */
+    public MappedCharStream(FileInputStream fileReader) throws IOException {
+        this(fileReader, false);
+    }
+
+    /** MappedCharStream constructor
+      * @param fileReader open input stream of the source file (closed by
+      * the stream, see close())
+      * @param recordDigest compute the SHA-256 digest of each file (see
+      * getDigest()), at the cost of one more pass over the bytes
+      * */
+    public MappedCharStream(FileInputStream fileReader, boolean recordDigest)
+        throws IOException {
+        super(new java.io.StringReader(""), 1, 1, 1);
+        this.recordDigest = recordDigest;
+        ReInit(fileReader);
+    }
+
+    /** Map and decode a new source file, closing the previous one
+      * @param fileReader open input stream of the source file
+      * */
+    public void ReInit(FileInputStream fileReader) throws IOException {
+        close();
+        channel = fileReader.getChannel();
+
+        // the mapping is only used while decoding; nothing keeps the
+        // buffer afterwards, so it is unmapped once it is collected
+        MappedByteBuffer buffer =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        decode(buffer, (int)channel.size());
+        digest = recordDigest ? digest(buffer) : null;
+
+        pos = 0;
+        tokenBegin = 0;
+        lastLine = 0;
+        lastColumnIndex = -1;
+        nextEscape = 0;
+    }
+
+    /** Get the SHA-256 digest of the bytes of the current file, as they
+      * were decoded
+      * @return digest, or null unless the stream was created to record
+      * digests
+      * */
+    public byte[] getDigest() {
+        return digest;
+    }
+
+    private static byte[] digest(MappedByteBuffer buffer) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer);
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** Decode the mapped file into the character array, recording line
+      * starts and unicode escapes along the way
+      * @param buffer mapped file contents
+      * @param size number of bytes in the file
+      * */
+    private void decode(MappedByteBuffer buffer, int size) throws IOException {
+        if (chars.length < size) {
+            chars = new char[size];
+        }
+
+        length = 0;
+        numLines = 1;
+        lineStarts[0] = 0;
+        numEscapes = 0;
+
+        // number of contiguous backslashes seen just before the current byte
+        int backslashes = 0;
+        int i = 0;
+
+        while (i < size) {
+            int b = buffer.get(i);
+            char c;
+
+            // fast path: plain ASCII
+            if (b >= 0 && b != '\\') {
+                c = (char)b;
+                i++;
+                backslashes = 0;
+            }
+            else if (b == '\\') {
+                if (backslashes % 2 == 0 && i + 1 < size &&
+                    buffer.get(i + 1) == 'u') {
+                    int start = i;
+                    i++;
+                    while (i < size && buffer.get(i) == 'u') {
+                        i++;
+                    }
+
+                    if (i + 4 > size) {
+                        throw new IOException(
+                            "Invalid escape character at line " + numLines);
+                    }
+
+                    c = (char)((hexValue(buffer.get(i)) << 12) |
+                               (hexValue(buffer.get(i + 1)) << 8) |
+                               (hexValue(buffer.get(i + 2)) << 4) |
+                               hexValue(buffer.get(i + 3)));
+                    i += 4;
+
+                    addEscape(length, i - start - 1);
+                    backslashes = 0;
+                }
+                else {
+                    c = '\\';
+                    i++;
+                    backslashes++;
+                }
+            }
+            else {
+                // multi-byte UTF-8 sequence
+                int extra;
+                int value;
+                if ((b & 0xE0) == 0xC0) {
+                    extra = 1;
+                    value = b & 0x1F;
+                }
+                else if ((b & 0xF0) == 0xE0) {
+                    extra = 2;
+                    value = b & 0x0F;
+                }
+                else {
+                    extra = 0;
+                    value = 0xFFFD;
+                }
+
+                i++;
+                for (int j = 0; j < extra && i < size; j++, i++) {
+                    value = (value << 6) | (buffer.get(i) & 0x3F);
+                }
+
+                c = (char)value;
+                backslashes = 0;
+            }
+
+            chars[length++] = c;
+
+            // "\r\n" is a single line break
+            if (c == '\n' ||
+                (c == '\r' && (i >= size || buffer.get(i) != '\n'))) {
+                if (numLines == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, numLines * 2);
+                }
+                lineStarts[numLines++] = length;
+            }
+        }
+    }
+
+    /** Record a character that came from a unicode escape
+      * @param index index of the decoded character
+      * @param width extra source columns taken up by the escape
+      * */
+    private void addEscape(int index, int width) {
+        if (numEscapes == escapes.length) {
+            escapes = Arrays.copyOf(escapes, Math.max(8, numEscapes * 2));
+            escapeWidths = Arrays.copyOf(escapeWidths, escapes.length);
+        }
+
+        escapes[numEscapes] = index;
+        escapeWidths[numEscapes] = width;
+        numEscapes++;
+    }
+
+    /** Get the value of a hexadecimal digit
+      * @param b digit
+      * @return value of the digit
+      * */
+    private static int hexValue(int b) throws IOException {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+
+        throw new IOException("Invalid hex digit in unicode escape: " + (char)b);
+    }
+
+    /** Get the line (index into lineStarts) of a character.  Tokens are
+      * read front to back, so the search starts from the last line found.
+      * @param index index of the character
+      * @return index of the line containing the character
+      * */
+    private int lineIndexOf(int index) {
+        int line = lastLine;
+
+        while (line > 0 && lineStarts[line] > index) {
+            line--;
+        }
+        while (line + 1 < numLines && lineStarts[line + 1] <= index) {
+            line++;
+        }
+
+        lastLine = line;
+        return line;
+    }
+
+    /** Get the column of a character.  Like lineIndexOf(), it carries on
+      * from the last character looked up if that is earlier on the same
+      * line, and only starts over from the line start otherwise.
+      * @param index index of the character
+      * @return column of the character (starting at 1)
+      * */
+    private int columnOf(int index) {
+        int start = lineStarts[lineIndexOf(index)];
+        int i;
+
+        if (lastColumnIndex >= start && lastColumnIndex <= index) {
+            i = lastColumnIndex + 1;
+        }
+        else {
+            lastColumn = 0;
+            lastEscapeWidth = 0;
+            while (nextEscape > 0 && escapes[nextEscape - 1] >= start) {
+                nextEscape--;
+            }
+            while (nextEscape < numEscapes && escapes[nextEscape] < start) {
+                nextEscape++;
+            }
+            i = start;
+        }
+
+        for (; i <= index && i < length; i++) {
+            if (chars[i] == '\t') {
+                lastColumn += TAB_SIZE - (lastColumn % TAB_SIZE);
+            }
+            else {
+                lastColumn++;
+            }
+        }
+        while (nextEscape < numEscapes && escapes[nextEscape] < index) {
+            lastEscapeWidth += escapeWidths[nextEscape];
+            nextEscape++;
+        }
+
+        lastColumnIndex = index;
+        return lastColumn + lastEscapeWidth;
+    }
+
+    public char BeginToken() throws IOException {
+        tokenBegin = pos;
+        return readChar();
+    }
+
+    public char readChar() throws IOException {
+        if (pos >= length) {
+            // the token manager expects an IOException at end of file
+            throw new IOException();
+        }
+
+        return chars[pos++];
+    }
+
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    public String GetImage() {
+        return new String(chars, tokenBegin, pos - tokenBegin);
+    }
+
+    public char[] GetSuffix(int len) {
+        return Arrays.copyOfRange(chars, pos - len, pos);
+    }
+
+    public int getBeginLine() {
+        return lineIndexOf(tokenBegin) + 1;
+    }
+
+    public int getBeginColumn() {
+        return columnOf(tokenBegin);
+    }
+
+    public int getEndLine() {
+        return lineIndexOf(Math.max(pos - 1, 0)) + 1;
+    }
+
+    public int getEndColumn() {
+        return columnOf(Math.max(pos - 1, 0));
+    }
+
+    /** @deprecated use getEndLine() */
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    /** @deprecated use getEndColumn() */
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    public void Done() {
+        chars = new char[0];
+        length = 0;
+    }
+
+    /** Close the channel (and so the input stream) of the current file.
+      * The decoded characters stay readable.
+      * */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
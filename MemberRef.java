@@ -0,0 +1,113 @@
+package codegenjvm;
+
+import java.util.HashMap;
+
+/** A field or method that an instruction refers to (the operand of
+  * getfield, putfield and the invoke instructions).  Refs are interned by
+  * a MemberRef.Table, so all the instructions that use a member share one
+  * ref.  CodeBuffer adds the ref to the constant pool as it is, and
+  * JasminWriter prints it; neither has to take a string apart.
+  * */
+public class MemberRef {
+    /** Internal name of the class the member is looked up in */
+    private String owner;
+    private String name;
+    /** Field or method descriptor */
+    private String descriptor;
+
+    private MemberRef(String owner, String name, String descriptor) {
+        this.owner = owner;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    /** Get the class the member is looked up in
+      * @return internal name of the class, e.g. Main
+      * */
+    public String getOwner() {
+        return owner;
+    }
+
+    /** Get the name of the member
+      * @return member name
+      * */
+    public String getName() {
+        return name;
+    }
+
+    /** Get the descriptor of the member
+      * @return field or method descriptor
+      * */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /** Is the member a method?
+      * @return true for a method, false for a field
+      * */
+    public boolean isMethod() {
+        return descriptor.charAt(0) == '(';
+    }
+
+    /** Get the member in Jasmin form
+      * @return e.g. Main/f I for a field or Main/f()V for a method
+      * */
+    public String toString() {
+        return owner + "/" + name + (isMethod() ? "" : " ") + descriptor;
+    }
+
+    /** Interns the refs used by one code generator (not thread-safe).
+      * Refs are looked up by owner and then by name, so getting a ref
+      * that has been made before builds no strings.
+      * */
+    public static class Table {
+        /** Field refs, by owner and name */
+        private HashMap<String, HashMap<String, MemberRef>> fields =
+            new HashMap<>();
+        /** Method refs, by owner and name */
+        private HashMap<String, HashMap<String, MemberRef>> methods =
+            new HashMap<>();
+
+        /** Get the ref of a field
+          * @param owner internal name of the class declaring the field
+          * @param name field name
+          * @param descriptor field descriptor
+          * @return interned ref
+          * */
+        public MemberRef getField(String owner, String name,
+            String descriptor) {
+            return get(fields, owner, name, descriptor);
+        }
+
+        /** Get the ref of a method
+          * @param owner internal name of the class the method is invoked
+          * on
+          * @param name method name
+          * @param descriptor method descriptor
+          * @return interned ref
+          * */
+        public MemberRef getMethod(String owner, String name,
+            String descriptor) {
+            return get(methods, owner, name, descriptor);
+        }
+
+        private static MemberRef get(
+            HashMap<String, HashMap<String, MemberRef>> refs, String owner,
+            String name, String descriptor) {
+            HashMap<String, MemberRef> members = refs.get(owner);
+            if (members == null) {
+                members = new HashMap<>();
+                refs.put(owner, members);
+            }
+
+            // Bantam has no overloading, so a name has one descriptor
+            MemberRef ref = members.get(name);
+            if (ref == null || !ref.descriptor.equals(descriptor)) {
+                ref = new MemberRef(owner, name, descriptor);
+                members.put(name, ref);
+            }
+
+            return ref;
+        }
+    }
+}
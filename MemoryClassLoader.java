@@ -0,0 +1,59 @@
+package codegenjvm;
+
+import java.util.Map;
+
+/** Loads classes generated in memory (see JVMCodeGenerator.run()), so a
+  * program can be run without writing its class files anywhere.  Classes
+  * that were not generated (the runtime classes TextIO and Sys, and the
+  * Java library) come from the parent loader.
+  *
+  * The loader is child-first: a generated class is defined here even if
+  * the parent can load a class of the same name.  The compiler's own
+  * driver class is called Main too, and asking the parent first would run
+  * the compiler instead of the program.
+  *
+  * Each compiled program needs a loader of its own: a class can only be
+  * defined once per loader.
+  * */
+public class MemoryClassLoader extends ClassLoader {
+    /** Class file bytes, by class name */
+    private Map<String, byte[]> classes;
+
+    /** MemoryClassLoader constructor
+      * @param classes class file bytes of the generated classes, by class
+      * name
+      * @param parent loader of everything else
+      * */
+    public MemoryClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+        super(parent);
+        this.classes = classes;
+    }
+
+    protected Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+        if (!classes.containsKey(name)) {
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+
+            return c;
+        }
+    }
+
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,74 @@
+package codegenjvm;
+
+import ast.*;
+import java.io.*;
+import java.util.Map;
+import semant.SemanticAnalyzer;
+import util.ClassTreeNode;
+
+/** Checks that MemoryClassLoader runs the generated Main even when its
+  * parent loader has a Main of its own (as the compiler does: its driver
+  * class is called Main).  Run with the runtime classes on the class path;
+  * exits with status 1 if the check fails.
+  * */
+public class MemoryClassLoaderTest {
+    public static void main(String[] args) throws Exception {
+        ClassLoader parent = new MemoryClassLoader(generate(1),
+            MemoryClassLoaderTest.class.getClassLoader());
+        ClassLoader loader = new MemoryClassLoader(generate(2), parent);
+
+        Class<?> main = loader.loadClass("Main");
+        String output = runMain(main);
+
+        if (main.getClassLoader() != loader || !output.trim().equals("2")) {
+            System.err.println("FAILED: ran the parent's Main, printed " +
+                output.trim());
+            System.exit(1);
+        }
+        System.out.println("MemoryClassLoaderTest passed");
+    }
+
+    /** Compile, in memory, a program whose Main prints a number
+      * @param value number to print
+      * @return class file bytes, by class name
+      * */
+    private static Map<String, byte[]> generate(int value) throws IOException {
+        StmtList body = new StmtList(2);
+        body.addElement(new DeclStmt(2, "TextIO", "io",
+            new NewExpr(2, "TextIO")));
+        ExprList actuals = new ExprList(3);
+        actuals.addElement(new ConstIntExpr(3, Integer.toString(value)));
+        body.addElement(new ExprStmt(3, new DispatchExpr(3,
+            new VarExpr(3, null, "io"), "putInt", actuals)));
+
+        MemberList members = new MemberList(1);
+        members.addElement(new Method(1, "void", "main", new FormalList(1),
+            body));
+        ClassList classes = new ClassList(0);
+        classes.addElement(new Class_(0, "Main.btm", "Main", "Object",
+            members));
+
+        ClassTreeNode root = new SemanticAnalyzer(new Program(0, classes),
+            false).analyze();
+        return new JVMCodeGenerator(root, false).generateClasses();
+    }
+
+    /** Run main() of a class, capturing what it prints
+      * @param main class to run
+      * @return standard output of the run
+      * */
+    private static String runMain(Class<?> main) throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            main.getMethod("main", String[].class)
+                .invoke(null, (Object)new String[0]);
+        }
+        finally {
+            System.setOut(out);
+        }
+
+        return bytes.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package util;
+
+import ast.*;
+import java.util.*;
+
+/** Flattened method table for a class: maps every method visible in the
+  * class (inherited ones included) to its declaring class, its Method node,
+  * and its JVM descriptor, so a call site can be resolved with a single
+  * lookup instead of walking the parent classes.
+  *
+  * Each analysis builds one table per class (parents first) after the
+  * class environment has been built, and keeps it in the ClassInfo of the
+  * class, which type checking and code generation then only read.
+  * */
+public class MethodTable {
+    /** Maps method names to table entries */
+    private HashMap<String, Entry> entries;
+
+    /** A method visible in a class */
+    public static class Entry {
+        /** Name of the class that declares the method */
+        private String declaringClass;
+        /** Method AST node */
+        private Method method;
+        /** Types of the formals, in order */
+        private Type[] formalTypes;
+        /** Return type */
+        private Type returnType;
+        /** JVM method descriptor, e.g. (ILjava/lang/String;)V */
+        private String descriptor;
+
+        /** Entry constructor
+          * @param declaringClass name of the class that declares the method
+          * @param method method AST node
+          * */
+        private Entry(String declaringClass, Method method) {
+            this.declaringClass = declaringClass;
+            this.method = method;
+            this.formalTypes = new Type[method.getFormalList().getSize()];
+            this.returnType = Type.get(method.getReturnType());
+
+            String descriptor = "(";
+            Iterator<ASTNode> iter = method.getFormalList().getIterator();
+            for (int i = 0; iter.hasNext(); i++) {
+                formalTypes[i] = Type.get(((Formal)iter.next()).getType());
+                descriptor += formalTypes[i].getDescriptor();
+            }
+
+            this.descriptor = descriptor + ")" + returnType.getDescriptor();
+        }
+
+        /** Get the name of the class that declares the method
+          * @return class name
+          * */
+        public String getDeclaringClass() {
+            return declaringClass;
+        }
+
+        /** Get the method AST node
+          * @return method node
+          * */
+        public Method getMethod() {
+            return method;
+        }
+
+        /** Get the types of the formals
+          * @return formal types, in order (must not be changed)
+          * */
+        public Type[] getFormalTypes() {
+            return formalTypes;
+        }
+
+        /** Get the return type
+          * @return canonical return type
+          * */
+        public Type getReturnType() {
+            return returnType;
+        }
+
+        /** Get the JVM descriptor of the method
+          * @return method descriptor
+          * */
+        public String getDescriptor() {
+            return descriptor;
+        }
+    }
+
+    /** MethodTable constructor
+      * @param parent table of the parent class (null for Object)
+      * @param node class tree node of the class
+      * */
+    public MethodTable(MethodTable parent, ClassTreeNode node) {
+        if (parent == null) {
+            entries = new HashMap<String, Entry>();
+        }
+        else {
+            entries = new HashMap<String, Entry>(parent.entries);
+        }
+
+        SymbolTable methodSymbolTable = node.getMethodSymbolTable();
+        Iterator<ASTNode> iter =
+            node.getASTNode().getMemberList().getIterator();
+
+        while (iter.hasNext()) {
+            ASTNode member = iter.next();
+
+            // only methods that made it into the symbol table (i.e. passed
+            // the class environment checks) are visible
+            if (member instanceof Method &&
+                methodSymbolTable.peek(((Method)member).getName()) == member) {
+                Method method = (Method)member;
+                entries.put(method.getName(), new Entry(node.getName(), method));
+            }
+        }
+    }
+
+    /** Look up a method visible in the class
+      * @param name method name
+      * @return table entry, or null if there is no such method
+      * */
+    public Entry lookup(String name) {
+        return entries.get(name);
+    }
+}
@@ -0,0 +1,214 @@
+package codegenjvm;
+
+import java.util.HashMap;
+
+/** The JVM instructions the code generator uses: opcode, kind of operand
+  * and effect on the operand stack of each one, by name.
+  * */
+public class Opcodes {
+    /** Operand kinds */
+    public static final int NONE = 0;
+    public static final int LOCAL = 1;
+    public static final int CONSTANT = 2;
+    public static final int BRANCH = 3;
+    public static final int FIELD = 4;
+    public static final int METHOD = 5;
+    public static final int CLASS = 6;
+    public static final int ARRAY_TYPE = 7;
+    /** Signed byte or short immediate (bipush, sipush) */
+    public static final int BYTE = 8;
+    public static final int SHORT = 9;
+    /** Local slot and increment (iinc) */
+    public static final int INCREMENT = 10;
+
+    /** Opcodes that get special treatment */
+    public static final int LDC = 0x12;
+    public static final int LDC_W = 0x13;
+    public static final int GOTO = 0xa7;
+    public static final int WIDE = 0xc4;
+    public static final int IINC = 0x84;
+    public static final int INVOKESTATIC = 0xb8;
+
+    /** Maps instruction names to {opcode, operand kind, stack effect};
+      * the stack effect of field and method instructions depends on the
+      * descriptor (see getStackEffect()) */
+    private static final HashMap<String, int[]> instructions = new HashMap<>();
+
+    static {
+        define("nop", 0x00, NONE, 0);
+        define("aconst_null", 0x01, NONE, 1);
+        define("iconst_m1", 0x02, NONE, 1);
+        define("iconst_0", 0x03, NONE, 1);
+        define("iconst_1", 0x04, NONE, 1);
+        define("iconst_2", 0x05, NONE, 1);
+        define("iconst_3", 0x06, NONE, 1);
+        define("iconst_4", 0x07, NONE, 1);
+        define("iconst_5", 0x08, NONE, 1);
+        define("bipush", 0x10, BYTE, 1);
+        define("sipush", 0x11, SHORT, 1);
+        define("ldc", LDC, CONSTANT, 1);
+        define("ldc_w", LDC_W, CONSTANT, 1);
+        define("iload", 0x15, LOCAL, 1);
+        define("aload", 0x19, LOCAL, 1);
+        define("iaload", 0x2e, NONE, -1);
+        define("aaload", 0x32, NONE, -1);
+        define("baload", 0x33, NONE, -1);
+        define("istore", 0x36, LOCAL, -1);
+        define("astore", 0x3a, LOCAL, -1);
+        define("iastore", 0x4f, NONE, -3);
+        define("aastore", 0x53, NONE, -3);
+        define("bastore", 0x54, NONE, -3);
+        define("pop", 0x57, NONE, -1);
+        define("pop2", 0x58, NONE, -2);
+        define("dup", 0x59, NONE, 1);
+        define("dup_x1", 0x5a, NONE, 1);
+        define("dup_x2", 0x5b, NONE, 1);
+        define("dup2", 0x5c, NONE, 2);
+        define("swap", 0x5f, NONE, 0);
+        define("iadd", 0x60, NONE, -1);
+        define("isub", 0x64, NONE, -1);
+        define("imul", 0x68, NONE, -1);
+        define("idiv", 0x6c, NONE, -1);
+        define("irem", 0x70, NONE, -1);
+        define("ineg", 0x74, NONE, 0);
+        define("iand", 0x7e, NONE, -1);
+        define("ior", 0x80, NONE, -1);
+        define("ixor", 0x82, NONE, -1);
+        define("iinc", IINC, INCREMENT, 0);
+        define("ifeq", 0x99, BRANCH, -1);
+        define("ifne", 0x9a, BRANCH, -1);
+        define("iflt", 0x9b, BRANCH, -1);
+        define("ifge", 0x9c, BRANCH, -1);
+        define("ifgt", 0x9d, BRANCH, -1);
+        define("ifle", 0x9e, BRANCH, -1);
+        define("if_icmpeq", 0x9f, BRANCH, -2);
+        define("if_icmpne", 0xa0, BRANCH, -2);
+        define("if_icmplt", 0xa1, BRANCH, -2);
+        define("if_icmpge", 0xa2, BRANCH, -2);
+        define("if_icmpgt", 0xa3, BRANCH, -2);
+        define("if_icmple", 0xa4, BRANCH, -2);
+        define("if_acmpeq", 0xa5, BRANCH, -2);
+        define("if_acmpne", 0xa6, BRANCH, -2);
+        define("goto", GOTO, BRANCH, 0);
+        define("ireturn", 0xac, NONE, -1);
+        define("areturn", 0xb0, NONE, -1);
+        define("return", 0xb1, NONE, 0);
+        define("getstatic", 0xb2, FIELD, 0);
+        define("putstatic", 0xb3, FIELD, 0);
+        define("getfield", 0xb4, FIELD, 0);
+        define("putfield", 0xb5, FIELD, 0);
+        define("invokevirtual", 0xb6, METHOD, 0);
+        define("invokespecial", 0xb7, METHOD, 0);
+        define("invokestatic", INVOKESTATIC, METHOD, 0);
+        define("new", 0xbb, CLASS, 1);
+        define("newarray", 0xbc, ARRAY_TYPE, 0);
+        define("anewarray", 0xbd, CLASS, 0);
+        define("arraylength", 0xbe, NONE, 0);
+        define("athrow", 0xbf, NONE, -1);
+        define("checkcast", 0xc0, CLASS, 0);
+        define("instanceof", 0xc1, CLASS, 0);
+        define("ifnull", 0xc6, BRANCH, -1);
+        define("ifnonnull", 0xc7, BRANCH, -1);
+
+        // short forms of the local variable instructions, e.g. iload_2
+        String[] names = { "iload", "aload", "istore", "astore" };
+        int[] opcodes = { 0x1a, 0x2a, 0x3b, 0x4b };
+        for (int i = 0; i < names.length; i++) {
+            int effect = instructions.get(names[i])[2];
+            for (int slot = 0; slot < 4; slot++) {
+                define(names[i] + "_" + slot, opcodes[i] + slot, NONE, effect);
+            }
+        }
+    }
+
+    private static void define(String name, int opcode, int operand,
+        int effect) {
+        instructions.put(name, new int[] { opcode, operand, effect });
+    }
+
+    /** Get the opcode of an instruction
+      * @param name instruction name, e.g. iload_2
+      * @return opcode
+      * */
+    public static int getOpcode(String name) {
+        return lookup(name)[0];
+    }
+
+    /** Get the kind of operand an instruction takes
+      * @param name instruction name
+      * @return one of the operand kinds (NONE, LOCAL, ...)
+      * */
+    public static int getOperandKind(String name) {
+        return lookup(name)[1];
+    }
+
+    /** Get the effect of an instruction on the depth of the operand stack
+      * @param name instruction name
+      * @param operand operand of the instruction (needed for field and
+      * method instructions)
+      * @return change in stack depth
+      * */
+    public static int getStackEffect(String name, Object operand) {
+        int[] info = lookup(name);
+
+        if (info[1] == FIELD) {
+            switch (name) {
+                case "getstatic": return 1;
+                case "putstatic": return -1;
+                case "getfield": return 0;
+                default: return -2;
+            }
+        }
+        else if (info[1] == METHOD) {
+            return methodEffect(((MemberRef)operand).getDescriptor(),
+                info[0] != INVOKESTATIC);
+        }
+
+        return info[2];
+    }
+
+    /** Is the instruction never followed by the next one (a goto, return
+      * or athrow)?
+      * @param name instruction name
+      * @return true if execution never falls through to the next
+      * instruction
+      * */
+    public static boolean endsBlock(String name) {
+        int opcode = lookup(name)[0];
+        return opcode == GOTO || (opcode >= 0xac && opcode <= 0xb1) ||
+            opcode == 0xbf;
+    }
+
+    private static int[] lookup(String name) {
+        int[] info = instructions.get(name);
+        if (info == null) {
+            throw new RuntimeException("Unknown instruction: " + name);
+        }
+
+        return info;
+    }
+
+    /** Get the stack effect of a method invocation
+      * @param descriptor method descriptor
+      * @param hasReceiver true unless the method is static
+      * @return change in stack depth
+      * */
+    private static int methodEffect(String descriptor, boolean hasReceiver) {
+        int effect = hasReceiver ? -1 : 0;
+
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            effect--;
+
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+        }
+
+        return descriptor.charAt(i + 1) == 'V' ? effect : effect + 1;
+    }
+}
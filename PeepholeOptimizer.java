@@ -0,0 +1,323 @@
+package codegenjvm;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Peephole optimizer over the instructions of a method.  It applies a
+  * table of rewrite rules to short instruction sequences until none of
+  * them matches any more.  Rules never match across a label (a label may
+  * be reached from elsewhere), except the branch rules, which are about
+  * labels.  Each rule can be switched off, and counts how often it fired.
+  *
+  * One optimizer may be shared by several code generators running in
+  * parallel: it keeps no per-method state, and the hit counters are atomic.
+  * Rules should be switched on or off before generation starts.
+  * */
+public class PeepholeOptimizer {
+    /** Passes over a method before giving up on reaching a fixed point */
+    private static final int MAX_PASSES = 10;
+
+    /** A rewrite rule */
+    private static abstract class Rule {
+        /** Rule name */
+        private String name;
+        private volatile boolean enabled = true;
+        /** Number of times the rule fired */
+        private AtomicLong hits = new AtomicLong();
+
+        private Rule(String name) {
+            this.name = name;
+        }
+
+        /** Try the rule on the instruction at index i
+          * @param code instructions of the method
+          * @param i index of an instruction
+          * @param targets index of each label in code
+          * @return true if the rule rewrote the code
+          * */
+        abstract boolean apply(InstructionList code, int i,
+            IdentityHashMap<Label, Integer> targets);
+    }
+
+    /** The rules, in the order they are tried */
+    private Rule[] rules = new Rule[] {
+        // dup; store; pop -> store and dup_x1; putfield; pop -> putfield
+        // (e.g. x++ or an assignment used as a statement)
+        new Rule("dead-dup") {
+            boolean apply(InstructionList code, int i,
+                IdentityHashMap<Label, Integer> targets) {
+                String dup = code.getOp(i);
+                if (!dup.equals("dup") && !dup.equals("dup_x1")) {
+                    return false;
+                }
+
+                int j = next(code, i);
+                if (j < 0 || !(dup.equals("dup") ? isStore(code.getOp(j))
+                    : code.getOp(j).equals("putfield"))) {
+                    return false;
+                }
+
+                int k = next(code, j);
+                if (k < 0 || !code.getOp(k).equals("pop")) {
+                    return false;
+                }
+
+                code.remove(i);
+                code.remove(k);
+                return true;
+            }
+        },
+
+        // push; pop -> nothing (for pushes without side effects)
+        new Rule("push-pop") {
+            boolean apply(InstructionList code, int i,
+                IdentityHashMap<Label, Integer> targets) {
+                if (!isPush(code.getOp(i))) {
+                    return false;
+                }
+
+                int j = next(code, i);
+                if (j < 0 || !code.getOp(j).equals("pop")) {
+                    return false;
+                }
+
+                code.remove(i);
+                code.remove(j);
+                return true;
+            }
+        },
+
+        // store n; load n -> dup; store n
+        new Rule("store-load") {
+            boolean apply(InstructionList code, int i,
+                IdentityHashMap<Label, Integer> targets) {
+                String store = code.getOp(i);
+                if (!isStore(store)) {
+                    return false;
+                }
+
+                int j = next(code, i);
+                if (j < 0) {
+                    return false;
+                }
+
+                String load = code.getOp(j);
+                if (!isLoad(load) || load.charAt(0) != store.charAt(0) ||
+                    getSlot(code, j) != getSlot(code, i)) {
+                    return false;
+                }
+
+                code.set(j, store, code.getInt(i));
+                code.set(i, "dup", null);
+                return true;
+            }
+        },
+
+        // branch to L where L: goto M -> branch to M
+        new Rule("jump-threading") {
+            boolean apply(InstructionList code, int i,
+                IdentityHashMap<Label, Integer> targets) {
+                if (!(code.getOperand(i) instanceof Label)) {
+                    return false;
+                }
+
+                Label label = (Label)code.getOperand(i);
+                Integer target = targets.get(label);
+                if (target == null) {
+                    return false;
+                }
+
+                int t = following(code, target);
+                if (t < 0 || !code.getOp(t).equals("goto") ||
+                    code.getOperand(t) == label ||
+                    code.getOperand(t) == code.getOperand(i)) {
+                    return false;
+                }
+
+                code.set(i, code.getOp(i), code.getOperand(t));
+                return true;
+            }
+        },
+
+        // goto L; L: -> L:
+        new Rule("goto-next") {
+            boolean apply(InstructionList code, int i,
+                IdentityHashMap<Label, Integer> targets) {
+                if (!code.getOp(i).equals("goto")) {
+                    return false;
+                }
+
+                for (int j = i + 1; j < code.size(); j++) {
+                    int kind = code.getKind(j);
+                    if (kind == InstructionList.INSTRUCTION) {
+                        return false;
+                    }
+                    if (kind == InstructionList.LABEL &&
+                        code.getOperand(j) == code.getOperand(i)) {
+                        code.remove(i);
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        }
+    };
+
+    /** Optimize the instructions of a method in place
+      * @param code instructions of the method
+      * @return number of rewrites made
+      * */
+    public int optimize(InstructionList code) {
+        int total = 0;
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            IdentityHashMap<Label, Integer> targets = new IdentityHashMap<>();
+            for (int i = 0; i < code.size(); i++) {
+                if (code.getKind(i) == InstructionList.LABEL) {
+                    targets.put((Label)code.getOperand(i), i);
+                }
+            }
+
+            int rewrites = 0;
+            for (int i = 0; i < code.size(); i++) {
+                for (Rule rule : rules) {
+                    if (code.getKind(i) != InstructionList.INSTRUCTION) {
+                        break;
+                    }
+
+                    if (rule.enabled && rule.apply(code, i, targets)) {
+                        rule.hits.incrementAndGet();
+                        rewrites++;
+                    }
+                }
+            }
+
+            code.compact();
+            total += rewrites;
+            if (rewrites == 0) {
+                break;
+            }
+        }
+
+        return total;
+    }
+
+    /** Switch a rule on or off
+      * @param name rule name
+      * @param enabled true to apply the rule
+      * */
+    public void setEnabled(String name, boolean enabled) {
+        getRule(name).enabled = enabled;
+    }
+
+    /** Get the names of the rules
+      * @return rule names, in the order the rules are tried
+      * */
+    public String[] getRuleNames() {
+        String[] names = new String[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            names[i] = rules[i].name;
+        }
+
+        return names;
+    }
+
+    /** Get the number of times a rule fired
+      * @param name rule name
+      * @return hit count
+      * */
+    public long getHits(String name) {
+        return getRule(name).hits.get();
+    }
+
+    private Rule getRule(String name) {
+        for (Rule rule : rules) {
+            if (rule.name.equals(name)) {
+                return rule;
+            }
+        }
+
+        throw new IllegalArgumentException("No peephole rule " + name);
+    }
+
+    public String toString() {
+        StringBuilder out = new StringBuilder("Peephole rule hits:");
+        for (Rule rule : rules) {
+            out.append(System.lineSeparator()).append("    ")
+                .append(rule.name).append(": ").append(rule.hits.get());
+            if (!rule.enabled) {
+                out.append(" (disabled)");
+            }
+        }
+
+        return out.toString();
+    }
+
+    /** Get the next instruction in the same basic block
+      * @param code instructions of the method
+      * @param i index of an entry
+      * @return index of the next instruction after i, or -1 if a label or
+      * the end of the method comes first
+      * */
+    private static int next(InstructionList code, int i) {
+        for (int j = i + 1; j < code.size(); j++) {
+            int kind = code.getKind(j);
+            if (kind == InstructionList.INSTRUCTION) {
+                return j;
+            }
+            if (kind == InstructionList.LABEL) {
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /** Get the first instruction at or after an entry, skipping labels
+      * @param code instructions of the method
+      * @param i index of an entry
+      * @return index of the instruction, or -1 at the end of the method
+      * */
+    private static int following(InstructionList code, int i) {
+        for (int j = i; j < code.size(); j++) {
+            if (code.getKind(j) == InstructionList.INSTRUCTION) {
+                return j;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isStore(String op) {
+        return op.startsWith("istore") || op.startsWith("astore");
+    }
+
+    private static boolean isLoad(String op) {
+        return op.startsWith("iload") || op.startsWith("aload");
+    }
+
+    /** Is the instruction a push with no side effects?
+      * @param op opcode name
+      * @return true for loads, constants and dup
+      * */
+    private static boolean isPush(String op) {
+        return isLoad(op) || op.startsWith("iconst") ||
+            op.equals("aconst_null") || op.startsWith("ldc") ||
+            op.endsWith("ipush") || op.equals("dup");
+    }
+
+    /** Get the slot of a load or store
+      * @param code instructions of the method
+      * @param i index of a load or store, e.g. iload 5 or iload_2
+      * @return slot number
+      * */
+    private static int getSlot(InstructionList code, int i) {
+        String op = code.getOp(i);
+        if (op.charAt(op.length() - 2) != '_') {
+            return code.getInt(i);
+        }
+
+        return op.charAt(op.length() - 1) - '0';
+    }
+}
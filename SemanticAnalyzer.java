@@ -0,0 +1,695 @@
+/* Bantam Java Compiler and Language Toolset.
+
+   Copyright (C) 2007 by Marc Corliss (corliss@hws.edu) and 
+                         E Christopher Lewis (lewis@vmware.com).
+   ALL RIGHTS RESERVED.
+
+   The Bantam Java toolset is distributed under the following 
+   conditions:
+
+     You may make copies of the toolset for your own use and 
+     modify those copies.
+
+     All copies of the toolset must retain the author names and 
+     copyright notice.
+
+     You may not sell the toolset or distribute it in 
+     conjunction with a commerical product or service without 
+     the expressed written consent of the authors.
+
+   THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS 
+   OR IMPLIED WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE 
+   IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+   PARTICULAR PURPOSE. 
+*/
+
+package semant;
+
+import ast.*;
+import util.*;
+import visitor.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/** The <tt>SemanticAnalyzer</tt> class performs semantic analysis.
+  * In particular this class is able to perform (via the <tt>analyze()</tt>
+  * method) the following tests and analyses: (1) legal inheritence
+  * hierarchy (all classes have existing parent, no cycles), (2) 
+  * legal class member declaration, (3) there is a correct Main class
+  * and main() method, and (4) each class member is correctly typed.
+  * 
+  * This class is incomplete and will need to be implemented by the student. 
+  * */
+public class SemanticAnalyzer {
+    /** Root of the AST */
+    private Program program;
+    
+    /** Root of the class hierarchy tree */
+    private ClassTreeNode root;
+    
+    /** Maps class names to ClassTreeNode objects describing the class */
+    private Hashtable<String,ClassTreeNode>
+	classMap = new Hashtable<String,ClassTreeNode>();
+
+    /** Ordered list of ClassTreeNode objects (breadth first) */
+    private Vector<ClassTreeNode> orderedClassList = new Vector<ClassTreeNode>();
+
+    /** Index for subtype queries over the class hierarchy tree */
+    private ClassHierarchy hierarchy;
+
+    /** Maps class names to what the analysis works out about the class
+      * (handed on to code generation, see ClassInfo) */
+    private HashMap<String,ClassInfo> classInfo = new HashMap<String,ClassInfo>();
+    
+    /** Object for error handling */
+    private ErrorHandler errorHandler = new ErrorHandler();
+    
+    /** Boolean indicating whether debugging is enabled */
+    private boolean debug = false;
+
+    /** Boolean indicating whether classes are analyzed in parallel */
+    private boolean parallel = false;
+
+    /** Boolean indicating whether to end the JVM when errors are found
+      * (otherwise an ErrorsFoundException is thrown) */
+    private boolean exitOnErrors = true;
+
+    /** Maximum number of inherited and non-inherited fields that can
+     * be defined for any one class */
+    private final int MAX_NUM_FIELDS = 1500;
+
+    /** SemanticAnalyzer constructor
+      * @param program root of the AST
+      * @param debug boolean indicating whether debugging is enabled
+      * */
+    public SemanticAnalyzer(Program program, boolean debug) {
+	this(program, debug, /*parallel?*/false);
+    }
+
+    /** SemanticAnalyzer constructor
+      * @param program root of the AST
+      * @param debug boolean indicating whether debugging is enabled
+      * @param parallel boolean indicating whether the class environments are
+      * built and the classes are type checked in parallel (errors are still
+      * reported in the sequential order)
+      * */
+    public SemanticAnalyzer(Program program, boolean debug, boolean parallel) {
+	this(program, debug, parallel, /*exitOnErrors?*/true);
+    }
+
+    /** SemanticAnalyzer constructor
+      * @param program root of the AST
+      * @param debug boolean indicating whether debugging is enabled
+      * @param parallel boolean indicating whether the classes are analyzed
+      * in parallel
+      * @param exitOnErrors boolean indicating whether analyze() ends the JVM
+      * when it finds errors or throws an ErrorsFoundException
+      * */
+    public SemanticAnalyzer(Program program, boolean debug, boolean parallel,
+			    boolean exitOnErrors) {
+	this.program = program;
+	this.debug = debug;
+	this.parallel = parallel;
+	this.exitOnErrors = exitOnErrors;
+    }
+    
+    /** Analyze the AST checking for semantic errors and annotating the tree
+      * Also builds an auxiliary class hierarchy tree 
+      * @return root of the class hierarchy tree (needed for code generation)
+      *
+      * Must add code to do the following:
+      *   1 - build built-in class nodes in class hierarchy tree (already done) and
+      *       build and check the rest of the class hierarchy tree
+      *   2 - build the environment for each class (adding class members only) 
+      *       and check that members are declared properly
+      *   3 - check that the Main class and main method are declared properly
+      *   4 - type check each class member
+      * See the lab manual for more details on each of these steps.
+      * */
+    public ClassTreeNode analyze() {
+
+	// list of class declarations
+	ClassList classList = program.getClassList();
+	
+	// PART 1: class tree
+	// build and check class hierarchy tree
+	buildClassTree(classList);
+	
+	// PART 2: class symbol table
+	// build class symbol table for members and check that members are
+	// declared properly
+	buildSymbolTable();
+	buildMethodTables();
+	
+	// PART 3: Main class/main method
+	// check that there is a Main class and main method
+	checkMain();
+	
+	// PART 4: type checking
+	// type check each member (fields and methods) of each user-defined class
+	typeCheck();
+
+	ErrorsFoundException.checkErrors(errorHandler, exitOnErrors);
+	ClassInfo.publish(root, classInfo);
+	return root;
+
+    }
+    
+    /** Add built in classes to the class tree 
+      * */
+    private void updateBuiltins() {
+	// create AST node for object
+	Class_ astNode = 
+	    new Class_(-1, "<built-in class>", "Object", null, 
+		       (MemberList)(new MemberList(-1))
+		       .addElement(new Method(-1, "Object", "clone", 
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null)))));
+	// create a class tree node for object, save in variable root
+	root = new ClassTreeNode(astNode,
+				 /*built-in?*/true, /*extendable?*/true, classMap);
+	// add object class tree node to the mapping
+	classMap.put("Object", root);
+	
+	// note: String, TextIO, and Sys all have fields that are not
+	// shown below.  Because these classes cannot be extended and
+	// fields are protected, they cannot be accessed by other
+	// classes, so they do not have to be included in the AST.
+	
+	// create AST node for String
+	astNode =
+	    new Class_(-1, "<built-in class>",
+		       "String", "Object", 					
+		       (MemberList)(new MemberList(-1))
+                       .addElement(new Method(-1, "int", "length",
+                                              new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "boolean", "equals",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "Object", 
+								     "str")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "String", "substring",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "int", 
+								     "beginIndex"))
+					      .addElement(new Formal(-1, "int",
+								     "endIndex")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "String", "concat",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "String",
+								     "str")), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null)))));
+	// create class tree node for String, add it to the mapping
+	classMap.put("String", new ClassTreeNode(astNode, /*built-in?*/true,
+						 /*extendable?*/false, classMap));
+	
+	// create AST node for TextIO
+	astNode =
+	    new Class_(-1, "<built-in class>", 
+		       "TextIO", "Object", 					
+		       (MemberList)(new MemberList(-1))
+		       .addElement(new Method(-1, "void", "readStdin", 
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "void", "readFile",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "String", 
+								     "readFile")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "void", "writeStdout", 
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "void", "writeStderr", 
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "void", "writeFile",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "String", 
+								     "writeFile")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "String", "getString",
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "int", "getInt",
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "TextIO", "putString",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "String", 
+								     "str")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       .addElement(new Method(-1, "TextIO", "putInt",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "int", 
+								     "n")),
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null)))));
+	// create class tree node for TextIO, add it to the mapping
+	classMap.put("TextIO", new ClassTreeNode(astNode, /*built-in?*/true,
+						 /*extendable?*/false, classMap));
+	
+	// create AST node for Sys
+	astNode =
+	    new Class_(-1, "<built-in class>",
+		       "Sys", "Object", 
+		       (MemberList)(new MemberList(-1))
+		       .addElement(new Method(-1, "void", "exit",
+					      (FormalList)(new FormalList(-1))
+					      .addElement(new Formal(-1, "int", 
+								     "status")), 
+					      (StmtList)(new StmtList(-1))
+					      .addElement(new ReturnStmt(-1, null))))
+		       /*
+		       .addElement(new Method(-1, "int", "time",
+					      new FormalList(-1), 
+					      (StmtList)(new StmtList(-1))
+				              .addElement(new ReturnStmt(-1, null))))
+                       */
+		       );
+	// create class tree node for Sys, add it to the mapping
+	classMap.put("Sys", new ClassTreeNode(astNode, /*built-in?*/true,
+					      /*extendable?*/false, classMap));
+    }
+
+
+    /*************************************************************************
+     *       You should not have to modify the code above this point         *
+     *************************************************************************/
+
+    /** Build class hierarchy tree, checking to make sure it is well-formed
+      * Broken up into three parts: (1) build class tree nodes, add nodes to 
+      * the mapping, and check for duplicate class names; (2) set parent links
+      * of the nodes, and check if parent exists; (3) check that there are
+      * no cycles in the graph (i.e., that it's a tree)
+      * @param classList list of AST class nodes
+      * */
+    private void buildClassTree(ClassList classList)
+    {
+        updateBuiltins();
+	    
+        // Build class tree nodes
+        Iterator<ASTNode> iter = classList.getIterator();
+
+        while (iter.hasNext()) {
+            ASTNode node = iter.next();
+
+            if (node instanceof Class_) {
+                Class_ classNode = (Class_)node;
+                String name = classNode.getName();
+				
+				if (classMap.containsKey(name)) {
+					errorHandler.register(errorHandler.SEMANT_ERROR,
+                        "Multiply declared class");
+                    return;
+				}
+				else {
+					ClassTreeNode treeNode = new ClassTreeNode(classNode, false, true, classMap);
+					classMap.put(name, treeNode);
+				}
+			}
+        }
+
+        // Build parent links for nodes
+        for (ClassTreeNode treeNode : classMap.values()) {
+            Class_ classNode = treeNode.getASTNode();
+            String parent = classNode.getParent();
+            
+            if (treeNode == root) {
+                continue;
+            }
+
+            if (!classMap.containsKey(parent)) {
+                errorHandler.register(errorHandler.SEMANT_ERROR,
+                    "Parent does not exist");
+                continue;
+            }
+            
+            ClassTreeNode parentNode = classMap.get(parent);
+            if (!parentNode.isExtendable()) {
+                errorHandler.register(errorHandler.SEMANT_ERROR,
+                    "Parent cannot be extended");
+                continue;
+            }
+
+            parentNode.addChild(treeNode);
+        }
+
+        // Build ordered class list from tree
+        // (breadth first from the root, so parents come before children)
+        orderedClassList.add(root);
+
+        int i = 0;
+        while (i < orderedClassList.size()) {
+            ClassTreeNode node = orderedClassList.get(i++);
+            Iterator<ClassTreeNode> childIter = node.getChildrenList();
+
+            while (childIter.hasNext()) {
+                orderedClassList.add(childIter.next());
+            }
+        }
+
+        hierarchy =
+            new ClassHierarchy(root, orderedClassList.size(), classMap);
+
+        // Every class on a cycle is unreachable from the root, so only
+        // classes that were not reached need to be checked for cycles
+        if (orderedClassList.size() < classMap.size() &&
+            checkCycles(classList)) {
+            orderedClassList.clear();
+        }
+    }
+
+    /** Find and report every cycle in the class hierarchy.  Each class
+      * has at most one parent, so following parent links from every
+      * class that has not been visited yet, and marking the classes on
+      * the current path, finds all the cycles in time linear in the
+      * number of classes.
+      * @param classList list of AST class nodes
+      * @return true if a cycle was found
+      * */
+    private boolean checkCycles(ClassList classList) {
+        final Integer ON_PATH = 1;
+        final Integer DONE = 2;
+        HashMap<ClassTreeNode, Integer> visited =
+            new HashMap<ClassTreeNode, Integer>();
+        boolean found = false;
+
+        // classes reached from the root cannot be on a cycle
+        for (ClassTreeNode node : orderedClassList) {
+            visited.put(node, DONE);
+        }
+
+        Iterator<ASTNode> iter = classList.getIterator();
+        while (iter.hasNext()) {
+            ClassTreeNode node = classMap.get(((Class_)iter.next()).getName());
+            ArrayList<ClassTreeNode> path = new ArrayList<ClassTreeNode>();
+
+            while (node != null && !visited.containsKey(node)) {
+                visited.put(node, ON_PATH);
+                path.add(node);
+                node = getLinkedParent(node);
+            }
+
+            if (node != null && visited.get(node).equals(ON_PATH)) {
+                String cycle = "";
+                for (int j = path.indexOf(node); j < path.size(); j++) {
+                    cycle += path.get(j).getName() + " -> ";
+                }
+
+                errorHandler.register(errorHandler.SEMANT_ERROR,
+                    "Class tree cycle detected: " + cycle + node.getName());
+                found = true;
+            }
+
+            for (ClassTreeNode pathNode : path) {
+                visited.put(pathNode, DONE);
+            }
+        }
+
+        return found;
+    }
+
+    /** Get the parent of a class if it was linked into the class tree
+      * (i.e., the parent exists and can be extended)
+      * @param node class tree node
+      * @return parent class tree node, or null if there is none
+      * */
+    private ClassTreeNode getLinkedParent(ClassTreeNode node) {
+        String parent = node.getASTNode().getParent();
+        if (parent == null) {
+            return null;
+        }
+
+        ClassTreeNode parentNode = classMap.get(parent);
+        if (parentNode == null || !parentNode.isExtendable()) {
+            return null;
+        }
+
+        return parentNode;
+    }
+    
+    /** Build symbol table for each class
+      * Note: builds symbol table only for class members not for locals
+      * Must be done before any type checking can be done since classes may
+      * contain code that refer to members in other classes
+      * Note also: cannot build symbol table for a subclass before its 
+      * parent class (since child may use symbols in superclass).
+      * */
+    private void buildSymbolTable()
+    {
+        // every class gets its ClassInfo up front, so the parallel passes
+        // only ever read the map
+        for (ClassTreeNode node : orderedClassList) {
+            classInfo.put(node.getName(), new ClassInfo());
+        }
+
+        if (parallel) {
+            buildSymbolTableParallel();
+            return;
+        }
+
+        ClassEnvVisitor visitor =
+            new ClassEnvVisitor(classMap, errorHandler);
+
+        for (ClassTreeNode node : orderedClassList) {
+            visitor.visit(node.getASTNode());
+            // lay out the fields while the class scope is still current
+            buildFieldTable(node);
+            if (node.getVarSymbolTable().getSize() > MAX_NUM_FIELDS) {
+                errorHandler.register(errorHandler.SEMANT_ERROR,
+                    "Too many fields");
+                return;
+            }
+        }
+    }
+
+    /** Build symbol table for each class, one level of the class tree at a
+      * time.  Classes at the same depth do not depend on each other, so each
+      * level is processed in parallel (one visitor and error collector per
+      * class) once the level above it is done.  The collected errors and the
+      * field count check are then handled class by class in the same order
+      * as buildSymbolTable(), so the errors reported are identical.
+      * */
+    private void buildSymbolTableParallel()
+    {
+        // split the (breadth first) class list into levels
+        Vector<Vector<ClassTreeNode>> levels =
+            new Vector<Vector<ClassTreeNode>>();
+        HashMap<ClassTreeNode, Integer> depths =
+            new HashMap<ClassTreeNode, Integer>();
+
+        for (ClassTreeNode node : orderedClassList) {
+            Integer parentDepth = depths.get(node.getParent());
+            int depth = parentDepth == null ? 0 : parentDepth + 1;
+            depths.put(node, depth);
+
+            if (depth == levels.size()) {
+                levels.add(new Vector<ClassTreeNode>());
+            }
+            levels.get(depth).add(node);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+
+        try {
+            for (Vector<ClassTreeNode> level : levels) {
+                ArrayList<Callable<Object>> tasks =
+                    new ArrayList<Callable<Object>>();
+                ArrayList<ErrorCollector> collectors =
+                    new ArrayList<ErrorCollector>();
+
+                for (ClassTreeNode node : level) {
+                    final Class_ nodeClass = node.getASTNode();
+                    final ErrorCollector collector = new ErrorCollector();
+                    collectors.add(collector);
+                    tasks.add(new Callable<Object>() {
+                        public Object call() {
+                            return new ClassEnvVisitor(classMap, collector)
+                                .visit(nodeClass);
+                        }
+                    });
+                }
+
+                for (Future<Object> result : pool.invokeAll(tasks)) {
+                    result.get();
+                }
+
+                for (int i = 0; i < level.size(); i++) {
+                    ClassTreeNode node = level.get(i);
+                    collectors.get(i).reportTo(errorHandler);
+                    // lay out the fields while the class scope is still current
+                    buildFieldTable(node);
+                    if (node.getVarSymbolTable().getSize() > MAX_NUM_FIELDS) {
+                        errorHandler.register(errorHandler.SEMANT_ERROR,
+                            "Too many fields");
+
+                        // the sequential path never gets to the classes
+                        // after this one, so undo their environments
+                        for (int j = i + 1; j < level.size(); j++) {
+                            level.get(j).getVarSymbolTable().exitScope();
+                            level.get(j).getMethodSymbolTable().exitScope();
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Flatten the field table of a class (its parent's table must have
+      * been built already)
+      * @param node class tree node of the class
+      * */
+    private void buildFieldTable(ClassTreeNode node)
+    {
+        ClassTreeNode parent = node.getParent();
+        FieldTable parentTable = parent == null ? null
+            : classInfo.get(parent.getName()).getFieldTable();
+
+        classInfo.get(node.getName())
+            .setFieldTable(new FieldTable(parentTable, node));
+    }
+
+    /** Flatten the method table of each class, now that every class has
+      * its methods (parents come before children in orderedClassList, so
+      * each parent table is built before it is copied)
+      * */
+    private void buildMethodTables()
+    {
+        for (ClassTreeNode node : orderedClassList) {
+            ClassTreeNode parent = node.getParent();
+            MethodTable parentTable = parent == null ? null
+                : classInfo.get(parent.getName()).getMethodTable();
+
+            classInfo.get(node.getName())
+                .setMethodTable(new MethodTable(parentTable, node));
+        }
+    }
+    
+    /** Check that Main class and main() method are defined correctly
+      * */
+    private void checkMain()
+    {
+        ClassTreeNode main = classMap.get("Main");
+
+        if (main == null) {
+            errorHandler.register(errorHandler.SEMANT_ERROR,
+                "Missing Main class");
+            return;
+        }
+
+        SymbolTable methodSymbolTable = main.getMethodSymbolTable();
+        Object mainMethod = methodSymbolTable.lookup("main");
+
+        if (mainMethod == null || !(mainMethod instanceof Method)) {
+            errorHandler.register(errorHandler.SEMANT_ERROR,
+                "Missing main method");
+            return;
+        }
+
+        if (!((Method)mainMethod).getReturnType().equals("void")) {
+            errorHandler.register(errorHandler.SEMANT_ERROR,
+                "Main method does not return void");
+            return;
+        }
+
+        if (((Method)mainMethod).getFormalList().getSize() != 0) {
+            errorHandler.register(errorHandler.SEMANT_ERROR,
+                "Main method does not take 0 args");
+            return;
+        }
+    }
+    
+    /** Type check each class member
+      * */
+    private void typeCheck()
+    {
+        if (parallel) {
+            typeCheckParallel();
+            return;
+        }
+
+        TypeCheckVisitor visitor =
+            new TypeCheckVisitor(classMap, classInfo, hierarchy,
+                errorHandler);
+
+        for (ClassTreeNode node : orderedClassList) {
+            Class_ nodeClass = node.getASTNode();
+            if (nodeClass.getFilename().equals("<built-in class>")) {
+                continue;
+            }
+
+            visitor.visit(nodeClass);
+        }
+    }
+
+    /** Type check each class member, checking the classes on a fork-join
+      * pool.  Once the symbol tables are built the classes can be checked
+      * independently; each class gets its own visitor (visitors keep the
+      * current class, loop state and local scopes) and its own error
+      * collector.  The collected errors are then reported class by class in
+      * the same order that typeCheck() would report them.
+      * */
+    private void typeCheckParallel()
+    {
+        ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        ArrayList<ErrorCollector> collectors = new ArrayList<ErrorCollector>();
+
+        for (ClassTreeNode node : orderedClassList) {
+            final Class_ nodeClass = node.getASTNode();
+            if (nodeClass.getFilename().equals("<built-in class>")) {
+                continue;
+            }
+
+            final ErrorCollector collector = new ErrorCollector();
+            collectors.add(collector);
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    return new TypeCheckVisitor(classMap, classInfo,
+                        hierarchy, collector).visit(nodeClass);
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+
+        try {
+            for (Future<Object> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        for (ErrorCollector collector : collectors) {
+            collector.reportTo(errorHandler);
+        }
+    }
+}
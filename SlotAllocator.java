@@ -0,0 +1,85 @@
+package util;
+
+import java.util.Arrays;
+
+/** Hands out JVM local variable slots to the formals and locals of a
+  * method.  Slot 0 holds this; formals and locals get the next free slot
+  * in declaration order.  When a block is exited, the slots of the locals
+  * declared in it are freed and handed out again to later declarations, so
+  * the number of slots a method needs is the largest number of locals live
+  * at once, not the number declared.
+  *
+  * Semantic analysis and code generation both use this class, so the
+  * slots recorded in bindings are the ones the code generator allocates.
+  * */
+public class SlotAllocator {
+    /** Slots of the names in the open scopes */
+    private FlatSymbolTable slots = new FlatSymbolTable();
+    /** Next free slot */
+    private int next = 1;
+    /** Number of slots needed so far (including this) */
+    private int maxSlots = 1;
+    /** Next free slot when each open scope was entered */
+    private int[] scopeNext = new int[16];
+    /** Number of open scopes */
+    private int numScopes = 0;
+
+    /** Start a new method: free all slots but slot 0 (this) and open the
+      * method's scope (for the formals and top-level locals)
+      * */
+    public void reset() {
+        while (slots.getCurrScopeLevel() > 0) {
+            slots.exitScope();
+        }
+
+        next = 1;
+        maxSlots = 1;
+        numScopes = 0;
+        enterScope();
+    }
+
+    /** Enter a new scope (a block)
+      * */
+    public void enterScope() {
+        if (numScopes == scopeNext.length) {
+            scopeNext = Arrays.copyOf(scopeNext, numScopes * 2);
+        }
+
+        scopeNext[numScopes++] = next;
+        slots.enterScope();
+    }
+
+    /** Exit the current scope, freeing the slots of its locals
+      * */
+    public void exitScope() {
+        slots.exitScope();
+        next = scopeNext[--numScopes];
+    }
+
+    /** Allocate a slot for a formal or local in the current scope
+      * @param name name of the formal or local
+      * @return slot number
+      * */
+    public int declare(String name) {
+        int slot = next++;
+        maxSlots = Math.max(maxSlots, next);
+        slots.add(name, slot);
+        return slot;
+    }
+
+    /** Get the slot of a formal or local that is in scope
+      * @param name name of the formal or local
+      * @return slot number, or -1 if the name is not in scope
+      * */
+    public int getSlot(String name) {
+        Object slot = slots.lookup(name);
+        return slot != null ? (Integer)slot : -1;
+    }
+
+    /** Get the number of slots the method needs so far
+      * @return max locals, including slot 0 (this)
+      * */
+    public int getMaxLocals() {
+        return maxSlots;
+    }
+}
@@ -0,0 +1,99 @@
+package codegenjvm;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/** Works out operand stack depths from the instructions of a method, the
+  * way the bytecode verifier does: the depth at the start of the method is
+  * 0, and it is propagated along every path (fall-through and branches)
+  * using each instruction's stack effect.
+  * */
+public class StackAnalyzer {
+    /** Compute the maximum stack depth of a method
+      * @param code instructions of the method
+      * @return max stack (0 for an empty method)
+      * */
+    public static int getMaxStack(InstructionList code) {
+        int size = code.size();
+
+        // index of each label in the list
+        IdentityHashMap<Label, Integer> targets = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (code.getKind(i) == InstructionList.LABEL) {
+                targets.put((Label)code.getOperand(i), i);
+            }
+        }
+
+        // depth before each entry (-1 until reached), plus a worklist of
+        // entries whose depth is known but whose successors are not done
+        int[] depths = new int[size + 1];
+        Arrays.fill(depths, -1);
+        int[] worklist = new int[size + 1];
+        int pending = 0;
+        int maxStack = 0;
+
+        depths[0] = 0;
+        worklist[pending++] = 0;
+
+        while (pending > 0) {
+            int start = worklist[--pending];
+            int depth = depths[start];
+
+            // follow the straight-line code from start, stopping where it
+            // joins code already reached with at least this depth
+            for (int i = start; i < size; i++) {
+                if (i > start) {
+                    if (depths[i] >= depth) {
+                        break;
+                    }
+                    depths[i] = depth;
+                }
+
+                if (code.getKind(i) != InstructionList.INSTRUCTION) {
+                    continue;
+                }
+
+                String op = code.getOp(i);
+                Object operand = code.getOperand(i);
+                depth += Opcodes.getStackEffect(op, operand);
+                maxStack = Math.max(maxStack, depth);
+
+                if (operand instanceof Label) {
+                    Integer target = targets.get(operand);
+                    if (target != null && depths[target] < depth) {
+                        depths[target] = depth;
+                        if (pending == worklist.length) {
+                            worklist = Arrays.copyOf(worklist, pending * 2);
+                        }
+                        worklist[pending++] = target;
+                    }
+                }
+
+                if (Opcodes.endsBlock(op)) {
+                    break;
+                }
+            }
+        }
+
+        return maxStack;
+    }
+
+    /** Compute the net effect on the stack of a stretch of straight-line
+      * code (branches count only for the operands they pop)
+      * @param code instructions of the method
+      * @param start index of the first entry of the stretch
+      * @return change in stack depth from start to the end of the list
+      * */
+    public static int getNetEffect(InstructionList code, int start) {
+        int effect = 0;
+
+        for (int i = start; i < code.size(); i++) {
+            if (code.getKind(i) == InstructionList.INSTRUCTION) {
+                effect += Opcodes.getStackEffect(code.getOp(i),
+                    code.getOperand(i));
+            }
+        }
+
+        return effect;
+    }
+}
@@ -0,0 +1,66 @@
+package util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Compiler-wide pool of interned identifiers.
+  *
+  * The lexer interns every identifier, so all occurrences of a name in the
+  * AST share one String instance.  String.equals() then succeeds on the
+  * identity check, and the hash code of each distinct name is computed once
+  * (String caches it), which is what the String-keyed tables (symbol, field
+  * and method tables) look names up by.
+  * The pool is safe to use from several threads (e.g. parallel parsing).
+  * A long-lived compiler (the compile server) clears it between compiles,
+  * so it does not keep every name of every program it has compiled.
+  * */
+public class SymbolPool {
+    /** Names whose canonical strings are the string literals used
+      * throughout the compiler (kept by clear()) */
+    private static final String[] PREDEFINED = new String[] {
+        "Object", "String", "TextIO", "Sys", "Main", "main", "Boolean",
+        "int", "boolean", "void", "null", "this", "super", "length",
+        "int[]", "boolean[]", "Object[]", "String[]"
+    };
+
+    /** Maps names to their canonical strings */
+    private static ConcurrentHashMap<String, String> names =
+        new ConcurrentHashMap<String, String>();
+
+    static {
+        for (String name : PREDEFINED) {
+            intern(name);
+        }
+    }
+
+    /** Get the canonical string for a name, making the name canonical if
+      * this is the first time it has been seen
+      * @param name identifier
+      * @return canonical string (identical for all equal names)
+      * */
+    public static String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String canonical = names.putIfAbsent(name, name);
+        return canonical == null ? name : canonical;
+    }
+
+    /** Forget every name except the predefined ones.  Must not be called
+      * while a compile is using the pool: names interned before and after
+      * would no longer be identical.
+      * */
+    public static void clear() {
+        names.clear();
+        for (String name : PREDEFINED) {
+            intern(name);
+        }
+    }
+
+    /** Get the number of distinct names
+      * @return number of names
+      * */
+    public static int size() {
+        return names.size();
+    }
+}
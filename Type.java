@@ -0,0 +1,215 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A canonical type.  There is exactly one Type object for each distinct
+  * type name (primitive, class, array, null or void), so types can be
+  * compared by identity.  Each type carries its JVM descriptor and internal
+  * name, computed once when the type is created, and array types carry
+  * their element type, so nothing needs to re-parse type names.
+  *
+  * The AST still stores types as (interned) names; Type.get() maps a name
+  * to its canonical type (and a missing name, null, to null).  The compile
+  * server clears the types between compiles (see clear()), so only the
+  * built-in types live as long as the compiler.
+  * */
+public final class Type {
+    /** Kind of a primitive type (int, boolean) */
+    private static final int PRIMITIVE_KIND = 0;
+    /** Kind of a class type */
+    private static final int CLASS_KIND = 1;
+    /** Kind of an array type */
+    private static final int ARRAY_KIND = 2;
+    /** Kind of the type of null */
+    private static final int NULL_KIND = 3;
+    /** Kind of void */
+    private static final int VOID_KIND = 4;
+
+    /** Maps type names to canonical types */
+    private static final ConcurrentHashMap<String, Type> types =
+        new ConcurrentHashMap<String, Type>();
+    /** Built-in types (kept by clear()) */
+    private static final ArrayList<Type> builtins = new ArrayList<Type>();
+
+    public static final Type INT =
+        define("int", PRIMITIVE_KIND, "I", null);
+    public static final Type BOOLEAN =
+        define("boolean", PRIMITIVE_KIND, "Z", null);
+    public static final Type VOID =
+        define("void", VOID_KIND, "V", null);
+    // null has no type of its own on the JVM; it is treated as Object
+    public static final Type NULL =
+        define("null", NULL_KIND, "Ljava/lang/Object;", "java/lang/Object");
+    public static final Type OBJECT = define("Object", CLASS_KIND,
+        "Ljava/lang/Object;", "java/lang/Object");
+    public static final Type STRING = define("String", CLASS_KIND,
+        "Ljava/lang/String;", "java/lang/String");
+
+    static {
+        define("Boolean", CLASS_KIND,
+            "Ljava/lang/Boolean;", "java/lang/Boolean");
+    }
+
+    /** Type name (interned) */
+    private final String name;
+    /** Kind of the type (one of the *_KIND constants) */
+    private final int kind;
+    /** Element type (arrays only) */
+    private final Type elementType;
+    /** JVM type descriptor, e.g. [Ljava/lang/String; */
+    private final String descriptor;
+    /** JVM internal name, e.g. java/lang/String (null for primitives) */
+    private final String internalName;
+    /** Array type with this type as its element type (created on demand) */
+    private volatile Type arrayType;
+
+    /** Type constructor (types are only created by define() and get())
+      * @param name type name
+      * @param kind kind of the type
+      * @param elementType element type (arrays only)
+      * @param descriptor JVM type descriptor
+      * @param internalName JVM internal name
+      * */
+    private Type(String name, int kind, Type elementType, String descriptor,
+        String internalName) {
+        this.name = SymbolPool.intern(name);
+        this.kind = kind;
+        this.elementType = elementType;
+        this.descriptor = descriptor;
+        this.internalName = internalName;
+    }
+
+    /** Create and register a built-in type
+      * @param name type name
+      * @param kind kind of the type
+      * @param descriptor JVM type descriptor
+      * @param internalName JVM internal name
+      * @return the new type
+      * */
+    private static Type define(String name, int kind, String descriptor,
+        String internalName) {
+        Type type = new Type(name, kind, null, descriptor, internalName);
+        types.put(name, type);
+        builtins.add(type);
+        return type;
+    }
+
+    /** Forget every type except the built-in ones (and their array types).
+      * Must not be called while a compile is using the types: a type
+      * looked up before and after would no longer be identical.
+      * */
+    public static void clear() {
+        types.clear();
+        for (Type type : builtins) {
+            type.arrayType = null;
+            types.put(type.name, type);
+        }
+    }
+
+    /** Get the canonical type for a type name, creating it if needed
+      * @param name type name, e.g. int, Foo or Foo[] (may be null)
+      * @return canonical type, or null if name is null
+      * */
+    public static Type get(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        Type type = types.get(name);
+        if (type != null) {
+            return type;
+        }
+
+        if (name.endsWith("[]")) {
+            Type element = get(name.substring(0, name.length() - 2));
+            String descriptor = "[" + element.descriptor;
+            type = new Type(name, ARRAY_KIND, element, descriptor, descriptor);
+        }
+        else {
+            type = new Type(name, CLASS_KIND, null, "L" + name + ";", name);
+        }
+
+        Type existing = types.putIfAbsent(type.name, type);
+        return existing != null ? existing : type;
+    }
+
+    /** Get the type name
+      * @return interned type name
+      * */
+    public String getName() {
+        return name;
+    }
+
+    /** Get the element type of an array type
+      * @return element type, or null if this is not an array type
+      * */
+    public Type getElementType() {
+        return elementType;
+    }
+
+    /** Get the innermost element type (the type itself if not an array)
+      * @return innermost non-array type
+      * */
+    public Type getBaseType() {
+        Type type = this;
+        while (type.elementType != null) {
+            type = type.elementType;
+        }
+
+        return type;
+    }
+
+    /** Get the array type whose elements are of this type
+      * @return canonical array type
+      * */
+    public Type getArrayType() {
+        Type type = arrayType;
+        if (type == null) {
+            type = get(name + "[]");
+            arrayType = type;
+        }
+
+        return type;
+    }
+
+    /** Get the JVM type descriptor
+      * @return descriptor, e.g. I or Ljava/lang/Object;
+      * */
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    /** Get the JVM internal name (arrays use their descriptor)
+      * @return internal name, e.g. java/lang/Object, or null for primitives
+      * and void
+      * */
+    public String getInternalName() {
+        return internalName;
+    }
+
+    /** Is this int or boolean?
+      * @return true if this is a primitive type
+      * */
+    public boolean isPrimitive() {
+        return kind == PRIMITIVE_KIND;
+    }
+
+    /** Is this a class type?
+      * @return true if this is a class type
+      * */
+    public boolean isClass() {
+        return kind == CLASS_KIND;
+    }
+
+    /** Is this an array type?
+      * @return true if this is an array type
+      * */
+    public boolean isArray() {
+        return kind == ARRAY_KIND;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
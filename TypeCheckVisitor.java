@@ -6,28 +6,95 @@ import util.*;
 
 import java.util.*;
 
-/** Visitor class for typechecking the AST */
+/** Visitor class for typechecking the AST.  Visiting an expression
+  * annotates it with the name of its type and returns its canonical Type,
+  * so types are compared by identity rather than by name. */
 public class TypeCheckVisitor extends Visitor {
     private static HashSet<String> reservedNames =
         new HashSet<String>(Arrays.asList("this", "super", "null"));
-    private static HashSet<String> primitives =
-        new HashSet<String>(Arrays.asList("boolean", "int"));
     
     private ErrorHandler errorHandler;
     /** Class map to use for typechecking */
     private Hashtable<String, ClassTreeNode> classMap;
+    /** What the analysis worked out about each class, by class name */
+    private Map<String, ClassInfo> classInfo;
+    /** Index for subtype queries */
+    private ClassHierarchy hierarchy;
     private ClassTreeNode curClass;
+    /** ClassInfo of the class being checked (its bindings are recorded
+      * there) */
+    private ClassInfo curInfo;
+    /** Bindings of the formals and locals of the method being checked */
+    private FlatSymbolTable varSymbolTable = new FlatSymbolTable();
+    /** Local slots of the formals and locals of the method being checked */
+    private SlotAllocator slots = new SlotAllocator();
 
     private boolean isInLoop = false;
 
     /** TypeCheckVisitor constructor
       * @param varSymbolTable VarSymbolTable for typechecking
+      * @param classInfo ClassInfo of each class in the class tree (only
+      * read here)
+      * @param hierarchy index for subtype queries
       * */
     public TypeCheckVisitor(Hashtable<String, ClassTreeNode> classMap,
+        Map<String, ClassInfo> classInfo, ClassHierarchy hierarchy,
         ErrorHandler errorHandler) {
         this.classMap = classMap;
+        this.classInfo = classInfo;
+        this.hierarchy = hierarchy;
         this.errorHandler = errorHandler;
     }
+
+    /** Resolve a variable name
+      * @param cls class whose fields are visible
+      * @param name variable name
+      * @param locals whether locals of the current method are visible
+      * @return binding of the variable, or null if it is not declared
+      * */
+    private Binding resolve(ClassTreeNode cls, String name, boolean locals) {
+        if (locals) {
+            Object temp = varSymbolTable.lookup(name);
+            if (temp != null) {
+                return (Binding)temp;
+            }
+        }
+
+        // there is no field table if building the class environments
+        // stopped early (too many fields)
+        FieldTable fields = classInfo.get(cls.getName()).getFieldTable();
+        FieldTable.Entry field = fields == null ? null : fields.lookup(name);
+        return field == null ? null : field.getBinding();
+    }
+
+    /** Declare a formal or local variable in the current scope
+      * @param name variable name
+      * @param type variable type
+      * @return binding of the variable
+      * */
+    private Binding declare(String name, Type type) {
+        Binding binding = new Binding(type, slots.declare(name));
+        varSymbolTable.add(name, binding);
+        return binding;
+    }
+
+    /** Typecheck an expression
+      * @param expr expression
+      * @return type of the expression
+      * */
+    private Type typeCheck(Expr expr) {
+        return (Type)expr.accept(this);
+    }
+
+    /** Annotate an expression with its type
+      * @param node expression
+      * @param type type of the expression
+      * @return type
+      * */
+    private Type setType(Expr node, Type type) {
+        node.setExprType(type.getName());
+        return type;
+    }
     
     /** Typecheck AST node
       * @param node AST node
@@ -35,6 +102,7 @@ public class TypeCheckVisitor extends Visitor {
       * */
     public Object visit(Class_ node) {
         curClass = classMap.get(node.getName());
+        curInfo = classInfo.get(node.getName());
         MemberList memberList = node.getMemberList();
         Iterator<ASTNode> iter = memberList.getIterator();
 
@@ -54,13 +122,11 @@ public class TypeCheckVisitor extends Visitor {
             return null;
         }
         
-        Expr init = node.getInit();
-        init.accept(this);
-        String type = node.getType();
-        String initType = init.getExprType();
+        Type initType = typeCheck(node.getInit());
+        Type type = Type.get(node.getType());
 
-        if (primitives.contains(type) || primitives.contains(initType)) {
-            if (!initType.equals(type)) {
+        if (type.isPrimitive() || initType.isPrimitive()) {
+            if (initType != type) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Primitive types do not match");
                 return null;
@@ -69,29 +135,24 @@ public class TypeCheckVisitor extends Visitor {
             return null;
         }
         else {
-            if (initType == "null") {
+            if (initType == Type.NULL) {
                 return null;
             }
 
-            if (type.endsWith("[]")) {
-                type = type.substring(0, type.length() - 2);
+            if (type.isArray()) {
+                type = type.getElementType();
 
-                if (initType.endsWith("[]")) {
-                    initType = initType.substring(0, initType.length() - 2);
+                if (initType.isArray()) {
+                    initType = initType.getElementType();
                 }
                 
-                if (type.equals(initType)) {
+                if (type == initType) {
                     return null;
                 }
             }
 
-            ClassTreeNode parent = classMap.get(initType);
-            while (parent != null) {
-                if (parent.getName().equals(type)) {
-                    return null;
-                }
-
-                parent = parent.getParent();
+            if (hierarchy.isSubtype(initType.getName(), type.getName())) {
+                return null;
             }
         }
 
@@ -105,11 +166,11 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(Method node) {
-        String type = node.getReturnType();
+        Type type = Type.get(node.getReturnType());
         FormalList formalList = node.getFormalList();
         StmtList stmtList = node.getStmtList();
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
         varSymbolTable.enterScope();
+        slots.reset();
 
         Iterator<ASTNode> formalIter = formalList.getIterator();
         while (formalIter.hasNext()) {
@@ -121,11 +182,11 @@ public class TypeCheckVisitor extends Visitor {
             ASTNode stmt = stmtIter.next();
             Object result = stmt.accept(this);
 
-            if (stmt instanceof ReturnStmt && result instanceof String) {
-                String ret = (String)result;
+            if (stmt instanceof ReturnStmt && result instanceof Type) {
+                Type ret = (Type)result;
                 
-                if (type.equals("void") || primitives.contains(type)) {
-                    if (!type.equals(ret)) {
+                if (type == Type.VOID || type.isPrimitive()) {
+                    if (type != ret) {
                         errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                             "Primitive types do not match");
                         varSymbolTable.exitScope();
@@ -133,24 +194,12 @@ public class TypeCheckVisitor extends Visitor {
                     }
                 }
                 else {
-                    if (ret.equals("null")) {
+                    if (ret == Type.NULL) {
                         varSymbolTable.exitScope();
                         return null;
                     }
 
-                    boolean found = false;
-                    ClassTreeNode parent = classMap.get(ret);
-
-                    while (parent != null) {
-                        if (parent.getName().equals(type)) {
-                            found = true;
-                            break;
-                        }
-
-                        parent = parent.getParent();
-                    }
-
-                    if (!found) {
+                    if (!hierarchy.isSubtype(ret.getName(), type.getName())) {
                         errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                             "Reference types do not match");
                         varSymbolTable.exitScope();
@@ -176,27 +225,24 @@ public class TypeCheckVisitor extends Visitor {
             return null;
         }
 
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
-        int curScope = varSymbolTable.getCurrScopeLevel();
-        if (varSymbolTable.lookup(name) != null &&
-            varSymbolTable.getScopeLevel(name) == curScope) {
+        if (varSymbolTable.peek(name) != null) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Multiply declared formal");
             return null;
         }
 
-        String type = node.getType();
-        String check = type;
-        if (check != null && check.endsWith("[]")) {
-            check = check.substring(0, check.length() - 2);
+        Type type = Type.get(node.getType());
+        Type check = type;
+        if (check != null && check.isArray()) {
+            check = check.getElementType();
         }
 
         if (check == null || 
-            (!classMap.containsKey(check) && !primitives.contains(check))) {
-            type = "Object";
+            (!classMap.containsKey(check.getName()) && !check.isPrimitive())) {
+            type = Type.OBJECT;
         }
         
-        varSymbolTable.add(name, type);
+        declare(name, type);
         return null;
     }
     
@@ -212,35 +258,32 @@ public class TypeCheckVisitor extends Visitor {
             return null;
         }
 
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
-        if (varSymbolTable.lookup(name) != null) {
+        if (resolve(curClass, name, true) != null) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Multiply declared variable");
             return null;
         }
-        varSymbolTable.add(name, node.getType());
+        Type type = Type.get(node.getType());
+        curInfo.setBinding(node, declare(name, type));
 
-        String type = node.getType();
         if (type == null) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Missing declaration type");
             return null;
         }
 
-        Expr init = node.getInit();
-        init.accept(this);
-        String initType = init.getExprType();
+        Type initType = typeCheck(node.getInit());
 
-        String checkType = type;
-        String checkInit = initType;
+        Type checkType = type;
+        Type checkInit = initType;
 
-        if (checkType.endsWith("[]") && checkInit.endsWith("[]")) {
-            checkType = checkType.substring(0, checkType.length() - 2);
-            checkInit = checkInit.substring(0, checkInit.length() - 2);
+        if (checkType.isArray() && checkInit.isArray()) {
+            checkType = checkType.getElementType();
+            checkInit = checkInit.getElementType();
         }
 
-        if ((primitives.contains(checkType) || primitives.contains(checkInit)) &&
-            !initType.equals(type)) {
+        if ((checkType.isPrimitive() || checkInit.isPrimitive()) &&
+            initType != type) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Declaration types do not match");
             return null;
@@ -276,10 +319,7 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(IfStmt node) {
-        Expr pred = node.getPredExpr();
-        pred.accept(this);
-
-        if (!pred.getExprType().equals("boolean")) {
+        if (typeCheck(node.getPredExpr()) != Type.BOOLEAN) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Predicate type is not boolean");
             return null;
@@ -295,9 +335,7 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(WhileStmt node) {
-        Expr pred = node.getPredExpr();
-        pred.accept(this);
-        if (!pred.getExprType().equals("boolean")) {
+        if (typeCheck(node.getPredExpr()) != Type.BOOLEAN) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Predicate type is not boolean");
             return null;
@@ -318,14 +356,10 @@ public class TypeCheckVisitor extends Visitor {
     public Object visit(ForStmt node) {
         Expr pred = node.getPredExpr();
 
-        if (pred != null) {
-            pred.accept(this);
-            
-            if (!pred.getExprType().equals("boolean")) {
-                errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
-                    "Predicate type is not boolean");
-                return null;
-            }
+        if (pred != null && typeCheck(pred) != Type.BOOLEAN) {
+            errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
+                "Predicate type is not boolean");
+            return null;
         }
 
         Expr init = node.getInitExpr();
@@ -351,14 +385,15 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BlockStmt node) {
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
         varSymbolTable.enterScope();
+        slots.enterScope();
 
         Iterator<ASTNode> iter = node.getStmtList().getIterator();
         while (iter.hasNext()) {
             iter.next().accept(this);
         }
 
+        slots.exitScope();
         varSymbolTable.exitScope();
         return null;
     }
@@ -370,16 +405,15 @@ public class TypeCheckVisitor extends Visitor {
     public Object visit(ReturnStmt node) {
         Expr expr = node.getExpr();
         if (expr == null) {
-            return "void";
+            return Type.VOID;
         }
 
-        expr.accept(this);
-        String type = expr.getExprType();
+        Type type = typeCheck(expr);
 
-        if (type.equals("void")) {
+        if (type == Type.VOID) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Return type is void");
-            return "Object";
+            return Type.OBJECT;
         }
 
         return type;
@@ -390,95 +424,68 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(DispatchExpr node) {
-        Expr ref = node.getRefExpr();
-        ref.accept(this);
-        String refType = ref.getExprType();
+        Type refType = typeCheck(node.getRefExpr());
         
-        if (primitives.contains(refType) || refType.equals("void")) {
-            node.setExprType("Object");
+        if (refType.isPrimitive() || refType == Type.VOID) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid reference type");
-            return "Object";
+            return setType(node, Type.OBJECT);
         }
 
-        ClassTreeNode parent = classMap.get("Object");
-        Method destMethod = null;
-        if (!refType.endsWith("[]")) {
-            parent = classMap.get(refType);
+        // classes outside the class tree (e.g. with a missing parent) have
+        // no ClassInfo, and no visible methods
+        ClassInfo refInfo = classInfo.get("Object");
+        MethodTable.Entry entry = null;
+        if (!refType.isArray()) {
+            refInfo = classInfo.get(refType.getName());
         }
         
-        if (parent != null) {
-            SymbolTable methodSymbolTable = parent.getMethodSymbolTable();
-            Object temp = methodSymbolTable.lookup(node.getMethodName());
-
-            if (temp != null && temp instanceof Method) {
-                destMethod = (Method)temp;
-            }
+        if (refInfo != null) {
+            entry = refInfo.getMethodTable().lookup(node.getMethodName());
         }
 
-        if (destMethod == null) {
-            node.setExprType("null");
+        if (entry == null) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Missing dispatch method");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        FormalList sourceList = destMethod.getFormalList();
-        Iterator<ASTNode> sourceIter = sourceList.getIterator();
+        Type[] sourceTypes = entry.getFormalTypes();
         ExprList actualList = node.getActualList();
         Iterator<ASTNode> actualIter = actualList.getIterator();
 
-        if (sourceList.getSize() != actualList.getSize()) {
-            node.setExprType("null");
+        if (sourceTypes.length != actualList.getSize()) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid number of arguments");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        while (sourceIter.hasNext() && actualIter.hasNext()) {
-            Formal source = (Formal)sourceIter.next();
-            String sourceType = source.getType();
-            Expr actual = (Expr)actualIter.next();
-            actual.accept(this);
-            String actualType = actual.getExprType();
+        for (Type sourceType : sourceTypes) {
+            Type actualType = typeCheck((Expr)actualIter.next());
 
-            if (actualType.endsWith("[]") && sourceType.endsWith("[]")) {
-                actualType = actualType.substring(0, actualType.length() - 2);
-                sourceType = sourceType.substring(0, sourceType.length() - 2);
+            if (actualType.isArray() && sourceType.isArray()) {
+                actualType = actualType.getElementType();
+                sourceType = sourceType.getElementType();
             }
             
-            if (actualType.equals("void") || (primitives.contains(actualType) &&
-                !sourceType.equals(actualType))) {
-                node.setExprType("null");
+            if (actualType == Type.VOID || (actualType.isPrimitive() &&
+                sourceType != actualType)) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Invalid argument primitive type");
-                return "null";
+                return setType(node, Type.NULL);
             }
 
-            if (!primitives.contains(actualType) && actualType != "null") {
-                ClassTreeNode actualClass = classMap.get(actualType);
-                boolean found = false;
-
-                while (actualClass != null) {
-                    if (actualClass.getName().equals(sourceType)) {
-                        found = true;
-                        break;
-                    }
-
-                    actualClass = actualClass.getParent();
-                }
-
-                if (!found) {
-                    node.setExprType("null");
+            if (!actualType.isPrimitive() && actualType != Type.NULL) {
+                if (!hierarchy.isSubtype(actualType.getName(),
+                    sourceType.getName())) {
                     errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                         "Invalid argument reference type");
-                    return "null";
+                    return setType(node, Type.NULL);
                 }
             }
         }
 
-        node.setExprType(destMethod.getReturnType());
-        return node.getExprType();
+        return setType(node, entry.getReturnType());
     }
     
     /** Typecheck AST node
@@ -486,89 +493,69 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(CastExpr node) {
-        String type = node.getType();
-        String check = type;
-        if (check.endsWith("[]")) {
-            check = check.substring(0, check.length() - 2);
+        Type type = Type.get(node.getType());
+        Type check = type;
+        if (check.isArray()) {
+            check = check.getElementType();
         }
 
-        if (type.endsWith("[]")) {
-            if (!classMap.containsKey(check) && !primitives.contains(check)) {
-                node.setExprType("Object");
+        if (type.isArray()) {
+            if (!classMap.containsKey(check.getName()) &&
+                !check.isPrimitive()) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Undeclared cast type");
-                return "Object";
+                return setType(node, Type.OBJECT);
             }
         }
-        else if (!classMap.containsKey(check)) {
-            node.setExprType("Object");
+        else if (!classMap.containsKey(check.getName())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Undeclared cast type");
-            return "Object";
+            return setType(node, Type.OBJECT);
         }
 
-        Expr expr = node.getExpr();
-        expr.accept(this);
-        String exprType = expr.getExprType();
-        if (primitives.contains(exprType)) {
-            node.setExprType("null");
+        Type exprType = typeCheck(node.getExpr());
+        if (exprType.isPrimitive()) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid cast type");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        if (type.endsWith("[]") && exprType.equals("Object")) {
-            node.setExprType(type);
+        if (type.isArray() && exprType == Type.OBJECT) {
             node.setUpCast(false);
-            return type;
+            return setType(node, type);
         }
 
-        if (type.equals("Object") && exprType.endsWith("[]")) {
-            node.setExprType(type);
+        if (type == Type.OBJECT && exprType.isArray()) {
             node.setUpCast(true);
-            return type;
+            return setType(node, type);
         }
 
-        String checkType = type;
-        String checkExpr = exprType;
+        Type checkType = type;
+        Type checkExpr = exprType;
 
-        if (checkType.endsWith("[]") && checkExpr.endsWith("[]")) {
-            checkType = checkType.substring(0, checkType.length() - 2);
-            checkExpr = checkExpr.substring(0, checkExpr.length() - 2);
+        if (checkType.isArray() && checkExpr.isArray()) {
+            checkType = checkType.getElementType();
+            checkExpr = checkExpr.getElementType();
         }
 
-        if (primitives.contains(checkType) && checkType.equals(checkExpr)) {
-            node.setExprType(type);
+        if (checkType.isPrimitive() && checkType == checkExpr) {
             node.setUpCast(true);
-            return type;
+            return setType(node, type);
         }
 
-        ClassTreeNode parent = classMap.get(checkExpr);
-        while (parent != null) {
-            if (parent.getName().equals(checkType)) {
-                node.setExprType(type);
-                node.setUpCast(true);
-                return type;
-            }
-
-            parent = parent.getParent();
+        if (hierarchy.isSubtype(checkExpr.getName(), checkType.getName())) {
+            node.setUpCast(true);
+            return setType(node, type);
         }
 
-        parent = classMap.get(checkType);
-        while (parent != null) {
-            if (parent.getName().equals(checkExpr)) {
-                node.setExprType(type);
-                node.setUpCast(false);
-                return type;
-            }
-
-            parent = parent.getParent();
+        if (hierarchy.isSubtype(checkType.getName(), checkExpr.getName())) {
+            node.setUpCast(false);
+            return setType(node, type);
         }
 
-        node.setExprType("null");
         errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
             "Invalid cast type");
-        return "null";
+        return setType(node, Type.NULL);
     }
     
     /** Typecheck AST node
@@ -576,26 +563,21 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(InstanceofExpr node) {
-        String type = node.getType();
-        if (!type.endsWith("[]") && !classMap.containsKey(type)) {
-            node.setExprType("null");
+        Type type = Type.get(node.getType());
+        if (!type.isArray() && !classMap.containsKey(type.getName())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid reference type");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        Expr expr = node.getExpr();
-        expr.accept(this);
-        String exprType = expr.getExprType();
-        if (exprType.equals("void") || primitives.contains(exprType)) {
-            node.setExprType("null");
+        Type exprType = typeCheck(node.getExpr());
+        if (exprType == Type.VOID || exprType.isPrimitive()) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid desired type");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType("boolean");
-        return "boolean";
+        return setType(node, Type.BOOLEAN);
     }
     
     /** Typecheck AST node
@@ -605,12 +587,10 @@ public class TypeCheckVisitor extends Visitor {
     public Object visit(NewExpr node) {
         String type = node.getType();
         if (classMap.containsKey(type)) {
-            node.setExprType(type);
-            return type;
+            return setType(node, Type.get(type));
         }
 
-        node.setExprType("Object");
-        return "Object";
+        return setType(node, Type.OBJECT);
     }
     
     /** Typecheck AST node
@@ -618,18 +598,13 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(NewArrayExpr node) {
-        Expr size = node.getSize();
-        size.accept(this);
-        String sizeType = size.getExprType();
-        if (!sizeType.equals("int")) {
-            node.setExprType("null");
+        if (typeCheck(node.getSize()) != Type.INT) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Array size is not an int");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(node.getType() + "[]");
-        return node.getExprType();
+        return setType(node, Type.get(node.getType()).getArrayType());
     }
     
     /** Typecheck AST node
@@ -637,11 +612,7 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(AssignExpr node) {
-        Expr expr = node.getExpr();
-        expr.accept(this);
-
-        String type = null;
-        String exprType = expr.getExprType();
+        Type exprType = typeCheck(node.getExpr());
         String ref = node.getRefName();
         String name = node.getName();
         ClassTreeNode parent = curClass;
@@ -651,41 +622,30 @@ public class TypeCheckVisitor extends Visitor {
                 parent = parent.getParent();
             }
             else if (!ref.equals("this")) {
-                node.setExprType("null");
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Invalid reference name");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
-        
-        while (parent != null) {
-            SymbolTable varSymbolTable = parent.getVarSymbolTable();
-            Object temp = varSymbolTable.lookup(name);
-            
-            if (temp != null && temp instanceof String) {
-                type = (String)temp;
-                break;
-            }
 
-            parent = parent.getParent();
-        }
+        Binding binding = resolve(parent, name, ref == null);
 
-        if (type == null) {
-            node.setExprType("null");
+        if (binding == null) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid init type");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        if (exprType.equals("void") || !type.equals(exprType)) {
-            node.setExprType("null");
+        curInfo.setBinding(node, binding);
+        Type type = binding.getType();
+
+        if (exprType == Type.VOID || type != exprType) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Reference and init types do not match");
-            return "null";
+            return setType(node, Type.NULL);
         }
         
-        node.setExprType(type);
-        return type;
+        return setType(node, type);
     }
     
     /** Typecheck AST node
@@ -693,19 +653,13 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ArrayAssignExpr node) {
-        Expr index = node.getIndex();
-        index.accept(this);
-        if (!index.getExprType().equals("int")) {
-            node.setExprType("null");
+        if (typeCheck(node.getIndex()) != Type.INT) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Array index is not an int");
-            return "null";
+            return setType(node, Type.NULL);
         }
     
-        Expr expr = node.getExpr();
-        expr.accept(this);  // Type of RHS expression
-    
-        String exprType = expr.getExprType();  // e.g., "Main"
+        Type exprType = typeCheck(node.getExpr());  // Type of RHS expression
         String ref = node.getRefName();
         String name = node.getName();
         ClassTreeNode parent = curClass;
@@ -714,61 +668,51 @@ public class TypeCheckVisitor extends Visitor {
             if (ref.equals("super")) {
                 parent = parent.getParent();
             } else if (!ref.equals("this")) {
-                node.setExprType("null");
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Invalid reference type");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
     
-        SymbolTable varSymbolTable = parent.getVarSymbolTable();
-        Object temp = varSymbolTable.lookup(name);
-        String arrayType = null;
-        if (temp instanceof String) {
-            arrayType = (String)temp;
+        Binding binding = resolve(parent, name, ref == null);
+        Type arrayType = null;
+        if (binding != null) {
+            curInfo.setBinding(node, binding);
+            arrayType = binding.getType();
         }
     
-        if (arrayType == null || !arrayType.endsWith("[]")) {
-            node.setExprType("null");
+        if (arrayType == null || !arrayType.isArray()) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid array variable type");
-            return "null";
+            return setType(node, Type.NULL);
         }
     
-        String elementType = arrayType.substring(0, arrayType.length() - 2);
-        if (exprType.equals("void")) {
-            node.setExprType("null");
+        Type elementType = arrayType.getElementType();
+        if (exprType == Type.VOID) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Cannot assign void to array element");
-            return "null";
+            return setType(node, Type.NULL);
         }
     
         // Prefer to annotate with the RHS type if it is a subclass of the array's element type
-        if (primitives.contains(elementType)) {
-            if (!elementType.equals(exprType)) {
+        if (elementType.isPrimitive()) {
+            if (elementType != exprType) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Primitive type mismatch in array assignment");
-                node.setExprType("null");
-                return "null";
+                return setType(node, Type.NULL);
             }
-            node.setExprType(elementType);
-            return elementType;
+            return setType(node, elementType);
         } else {
             // Check if exprType is a subclass of elementType
-            ClassTreeNode rhsClass = classMap.get(exprType);
-            while (rhsClass != null) {
-                if (rhsClass.getName().equals(elementType)) {
-                    node.setExprType(exprType);  // ← Use the more specific RHS type here!
-                    return exprType;
-                }
-                rhsClass = rhsClass.getParent();
+            if (hierarchy.isSubtype(exprType.getName(),
+                elementType.getName())) {
+                return setType(node, exprType);  // ← Use the more specific RHS type here!
             }
         }
     
-        node.setExprType("null");
         errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
             "Reference and init types do not match in array assignment");
-        return "null";
+        return setType(node, Type.NULL);
     }
     
     /** Typecheck AST node
@@ -778,25 +722,20 @@ public class TypeCheckVisitor extends Visitor {
     public Object visit(UnaryDecrExpr node) {
         Expr expr = node.getExpr();
         if (!(expr instanceof VarExpr || expr instanceof ArrayExpr)) {
-            node.setExprType("null");
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid expression type");
-            return "null";
+            return setType(node, Type.NULL);
         }
         
-        expr.accept(this);
-        String type = expr.getExprType();
-        String oper = node.getOperandType();
+        Type type = typeCheck(expr);
         
-        if (!type.equals(oper)) {
-            node.setExprType("null");
+        if (type != Type.get(node.getOperandType())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(type);
-        return type;
+        return setType(node, type);
     }
     
     /** Typecheck AST node
@@ -806,25 +745,20 @@ public class TypeCheckVisitor extends Visitor {
     public Object visit(UnaryIncrExpr node) {
         Expr expr = node.getExpr();
         if (!(expr instanceof VarExpr || expr instanceof ArrayExpr)) {
-            node.setExprType("null");
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Invalid expression type");
-            return "null";
+            return setType(node, Type.NULL);
         }
         
-        expr.accept(this);
-        String type = expr.getExprType();
-        String oper = node.getOperandType();
+        Type type = typeCheck(expr);
         
-        if (!type.equals(oper)) {
-            node.setExprType("null");
+        if (type != Type.get(node.getOperandType())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(type);
-        return type;
+        return setType(node, type);
     }
     
     /** Typecheck AST node
@@ -832,20 +766,15 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(UnaryNegExpr node) {
-        Expr expr = node.getExpr();
-        expr.accept(this);
-        String type = expr.getExprType();
-        String oper = node.getOperandType();
+        Type type = typeCheck(node.getExpr());
         
-        if (!type.equals(oper)) {
-            node.setExprType("null");
+        if (type != Type.get(node.getOperandType())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(type);
-        return type;
+        return setType(node, type);
     }
     
     /** Typecheck AST node
@@ -853,20 +782,15 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(UnaryNotExpr node) {
-        Expr expr = node.getExpr();
-        expr.accept(this);
-        String type = expr.getExprType();
-        String oper = node.getOperandType();
+        Type type = typeCheck(node.getExpr());
         
-        if (!type.equals(oper)) {
-            node.setExprType("null");
+        if (type != Type.get(node.getOperandType())) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(type);
-        return type;
+        return setType(node, type);
     }
     
     /** Typecheck AST node
@@ -874,26 +798,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryArithDivideExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -901,26 +816,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryArithMinusExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -928,26 +834,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryArithModulusExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -955,26 +852,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryArithPlusExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -982,26 +870,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryArithTimesExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1009,56 +888,30 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompEqExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
 
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        if (primitives.contains(lhsType) || primitives.contains(rhsType)) {
-            if (!lhsType.equals(rhsType)) {
-                node.setExprType("null");
+        if (lhsType.isPrimitive() || rhsType.isPrimitive()) {
+            if (lhsType != rhsType) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Operand primitive types do not match");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
-        else if (lhsType != "null" && rhsType != "null") {
-            boolean valid = false;
-
-            ClassTreeNode parent = classMap.get(lhsType);
-            while (parent != null) {
-                if (parent.getName().equals(rhsType)) {
-                    valid = true;
-                    break;
-                }
-
-                parent = parent.getParent();
-            }
-
-            parent = classMap.get(rhsType);
-            while (parent != null) {
-                if (parent.getName().equals(lhsType)) {
-                    valid = true;
-                    break;
-                }
-
-                parent = parent.getParent();
-            }
+        else if (lhsType != Type.NULL && rhsType != Type.NULL) {
+            // comparable if one type is an ancestor of the other
+            Type ancestor = Type.get(hierarchy.getLeastCommonAncestor(
+                lhsType.getName(), rhsType.getName()));
+            boolean valid = lhsType == ancestor || rhsType == ancestor;
 
             if (!valid) {
-                node.setExprType("null");
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Operand reference types do not match");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
 
-        String operator = node.getOpType();
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1066,26 +919,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompGeqExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1093,26 +937,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompGtExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1120,26 +955,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompLeqExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1147,26 +973,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompLtExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1174,56 +991,30 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryCompNeExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
 
-        if (primitives.contains(lhsType) || primitives.contains(rhsType)) {
-            if (!lhsType.equals(rhsType)) {
-                node.setExprType("null");
+        if (lhsType.isPrimitive() || rhsType.isPrimitive()) {
+            if (lhsType != rhsType) {
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Operand primitive types do not match");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
-        else if (lhsType != "null" && rhsType != "null") {
-            boolean valid = false;
-
-            ClassTreeNode parent = classMap.get(lhsType);
-            while (parent != null) {
-                if (parent.getName().equals(rhsType)) {
-                    valid = true;
-                    break;
-                }
-
-                parent = parent.getParent();
-            }
-
-            parent = classMap.get(rhsType);
-            while (parent != null) {
-                if (parent.getName().equals(lhsType)) {
-                    valid = true;
-                    break;
-                }
-
-                parent = parent.getParent();
-            }
+        else if (lhsType != Type.NULL && rhsType != Type.NULL) {
+            // comparable if one type is an ancestor of the other
+            Type ancestor = Type.get(hierarchy.getLeastCommonAncestor(
+                lhsType.getName(), rhsType.getName()));
+            boolean valid = lhsType == ancestor || rhsType == ancestor;
 
             if (!valid) {
-                node.setExprType("null");
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Operand reference types do not match");
-                return "null";
+                return setType(node, Type.NULL);
             }
         }
 
-        String operator = node.getOpType();
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1231,26 +1022,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryLogicAndExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
-
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1258,26 +1040,17 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(BinaryLogicOrExpr node) {
-        Expr lhs = node.getLeftExpr();
-        lhs.accept(this);
-        String lhsType = lhs.getExprType();
+        Type lhsType = typeCheck(node.getLeftExpr());
+        Type rhsType = typeCheck(node.getRightExpr());
+        Type operand = Type.get(node.getOperandType());
 
-        Expr rhs = node.getRightExpr();
-        rhs.accept(this);
-        String rhsType = rhs.getExprType();
-
-        String operand = node.getOperandType();
-        String operator = node.getOpType();
-
-        if (!lhsType.equals(operand) || !rhsType.equals(operand)) {
-            node.setExprType("null");
+        if (lhsType != operand || rhsType != operand) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Type does not match expected");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        node.setExprType(operator);
-        return operator;
+        return setType(node, Type.get(node.getOpType()));
     }
     
     /** Typecheck AST node
@@ -1289,81 +1062,75 @@ public class TypeCheckVisitor extends Visitor {
         Expr ref = node.getRef();
         
         if (ref != null) {
-            ref.accept(this);
-            String type = ref.getExprType();
+            Type type = typeCheck(ref);
 
             if (ref instanceof VarExpr) {
                 String refName = ((VarExpr)ref).getName();
                 String check = node.getName();
                 ClassTreeNode parent = curClass;
+                boolean locals = false;
                 
                 if (refName.equals("super")) {
                     parent = parent.getParent();
                 }
                 else if (!refName.equals("this")) {
                     check = refName;
+                    locals = true;
                 }
 
-                SymbolTable varSymbolTable = parent.getVarSymbolTable();
-                Object temp = varSymbolTable.lookup(check);
-                if (temp != null && temp instanceof String) {
-                    type = (String)temp;
+                Binding binding = resolve(parent, check, locals);
+                if (binding != null) {
+                    type = binding.getType();
+                    if (!locals) {
+                        // this.<name> or super.<name>
+                        curInfo.setBinding(node, binding);
+                    }
                 }
             }
 
             if (type == null) {
-                node.setExprType("Object");
-                return "Object";
+                return setType(node, Type.OBJECT);
             }
 
-            if (type.endsWith("[]")) {
+            if (type.isArray()) {
                 if (!name.equals("length")) {
-                    node.setExprType("null");
                     errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                         "Invalid array field");
-                    return "null";
+                    return setType(node, Type.NULL);
                 }
 
-                node.setExprType("int");
-                return "int";
+                return setType(node, Type.INT);
             }
 
-            node.setExprType(type);
-            return type;
+            return setType(node, type);
         }
 
         if (name.equals("this")) {
-            node.setExprType(curClass.getName());
-            return node.getExprType();
+            return setType(node, Type.get(curClass.getName()));
         }
 
         if (name.equals("super")) {
             ClassTreeNode parent = curClass.getParent();
             if (parent == null) {
-                node.setExprType("null");
                 errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                     "Undeclared field reference");
-                return "null";
+                return setType(node, Type.NULL);
             }
 
-            node.setExprType(parent.getName());
-            return node.getExprType();
+            return setType(node, Type.get(parent.getName()));
         }
 
         if (name.equals("null")) {
-            node.setExprType("null");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
-        Object temp = varSymbolTable.lookup(name);
-        if (temp != null && temp instanceof String) {
-            node.setExprType((String)temp);
-            return node.getExprType();
+        Binding binding = resolve(curClass, name, true);
+        if (binding != null) {
+            curInfo.setBinding(node, binding);
+            return setType(node, binding.getType());
         }
 
-        node.setExprType("Object");
-        return "Object";
+        return setType(node, Type.OBJECT);
     }
     
     /** Typecheck AST node
@@ -1371,13 +1138,10 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ArrayExpr node) {
-        Expr index = node.getIndex();
-        index.accept(this);
-        if (!index.getExprType().equals("int")) {
-            node.setExprType("null");
+        if (typeCheck(node.getIndex()) != Type.INT) {
             errorHandler.register(errorHandler.SEMANT_ERROR, curClass.getASTNode().getFilename(), node.getLineNum(),
                 "Array size is not an int");
-            return "null";
+            return setType(node, Type.NULL);
         }
 
         String name = node.getName();
@@ -1389,51 +1153,50 @@ public class TypeCheckVisitor extends Visitor {
                 String refName = ((VarExpr)ref).getName();
                 String check = node.getName();
                 ClassTreeNode parent = curClass;
+                boolean locals = false;
                 
                 if (refName.equals("super")) {
                     parent = parent.getParent();
                 }
                 else if (!refName.equals("this")) {
                     check = refName;
+                    locals = true;
                 }
 
-                String type = null;
+                Type type = null;
 
                 if (parent != null) {
-                    SymbolTable varSymbolTable = parent.getVarSymbolTable();
-                    Object temp = varSymbolTable.lookup(check);
-                    if (temp != null && temp instanceof String) {
-                        type = (String)temp;
+                    Binding binding = resolve(parent, check, locals);
+                    if (binding != null) {
+                        type = binding.getType();
+                        // this.<name>[...] or super.<name>[...], or
+                        // <local>.<name>[...], which indexes the local
+                        curInfo.setBinding(node, binding);
                     }
                 }
                 
                 if (type == null) {
-                    node.setExprType("Object");
-                    return "Object";
+                    return setType(node, Type.OBJECT);
                 }
 
-                if (type.endsWith("[]")) {
-                    node.setExprType(type.substring(0, type.length() - 2));
-                    return node.getExprType();
+                if (type.isArray()) {
+                    return setType(node, type.getElementType());
                 }
 
-                node.setExprType("Object");
-                return "Object";
+                return setType(node, Type.OBJECT);
             }
         }
 
-        SymbolTable varSymbolTable = curClass.getVarSymbolTable();
-        Object temp = varSymbolTable.lookup(name);
-        if (temp != null && temp instanceof String) {
-            String type = (String)temp;
-            if (type.endsWith("[]")) {
-                node.setExprType(type.substring(0, type.length() - 2));
-                return node.getExprType();
+        Binding binding = resolve(curClass, name, true);
+        if (binding != null) {
+            curInfo.setBinding(node, binding);
+            Type type = binding.getType();
+            if (type != null && type.isArray()) {
+                return setType(node, type.getElementType());
             }
         }
 
-        node.setExprType("Object");
-        return "Object";
+        return setType(node, Type.OBJECT);
     }
     
     /** Typecheck AST node
@@ -1441,8 +1204,7 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ConstBooleanExpr node) {
-        node.setExprType("boolean");
-        return "boolean";
+        return setType(node, Type.BOOLEAN);
     }
     
     /** Typecheck AST node
@@ -1450,8 +1212,7 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ConstIntExpr node) {
-        node.setExprType("int");
-        return "int";
+        return setType(node, Type.INT);
     }
     
     /** Typecheck AST node
@@ -1459,7 +1220,6 @@ public class TypeCheckVisitor extends Visitor {
       * @return null (returns value to satisfy compiler)
       * */
     public Object visit(ConstStringExpr node) {
-        node.setExprType("String");
-        return "String";
+        return setType(node, Type.STRING);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package codegenjvm;
+
+import util.Type;
+
+public class TypeHelper {
+    public static String getBase(String type) {
+        Type canonical = Type.get(type);
+        String base = canonical.getInternalName();
+        return base != null ? base : canonical.getName();
+    }
+
+    public static String getDescriptor(String type) {
+        return Type.get(type).getDescriptor();
+    }
+
+    public static boolean isInt(String type) {
+        return Type.get(type) == Type.INT;
+    }
+
+    public static boolean isBoolean(String type) {
+        return Type.get(type) == Type.BOOLEAN;
+    }
+
+    public static boolean isPrimitive(String type) {
+        return Type.get(type).isPrimitive();
+    }
+
+    public static boolean isVoid(String type) {
+        return Type.get(type) == Type.VOID;
+    }
+
+    public static boolean isArrayBase(String type) {
+        return Type.get(type).isArray();
+    }
+
+    public static boolean isArrayDescriptor(String type) {
+        return type.startsWith("[");
+    }
+
+    public static String getNonArrayType(String type) {
+        return Type.get(type).getBaseType().getName();
+    }
+}